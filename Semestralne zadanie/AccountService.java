@@ -0,0 +1,56 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+// What the app needs from an account backend: UserService on the local files, or
+// SyncClient talking to a SyncServer. Every call blocks, so none of them belong on the EDT.
+interface AccountService extends Closeable {
+
+    // One login. Several sessions can share an account (e.g. the GUI and a network client)
+    // and the account stays loaded until the last of them logs out.
+    final class Session {
+        final String username, email, studentId;
+        volatile boolean open = true;
+
+        Session(String username, String email, String studentId) {
+            this.username = username;
+            this.email = email;
+            this.studentId = studentId;
+        }
+
+        boolean isOpen() {
+            return open;
+        }
+    }
+
+    // False if the name is taken
+    boolean register(String username, char[] password, String email, String studentId) throws IOException;
+
+    // Null for an unknown user or a wrong password
+    Session login(String username, char[] password) throws IOException;
+
+    void logout(Session s) throws IOException;
+
+    // A copy of the list, consistent as of one point in time
+    List<Todo> todos(Session s) throws IOException;
+
+    void add(Session s, String task, long created) throws IOException;
+
+    void addAll(Session s, List<Todo> batch) throws IOException;
+
+    // False if there is no such row or it is already completed
+    boolean complete(Session s, int index, long when) throws IOException;
+
+    boolean delete(Session s, int index) throws IOException;
+
+    // The whole list again if someone else changed it since the last todos()/refresh(),
+    // null if nothing changed. Only a remote backend can see such changes.
+    default List<Todo> refresh(Session s) throws IOException {
+        return null;
+    }
+
+    // The app now shows list (as returned by todos() or refresh()); a remote backend bases
+    // the row indexes of later edits on it
+    default void showing(Session s, List<Todo> list) throws IOException {
+    }
+}
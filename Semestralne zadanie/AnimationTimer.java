@@ -0,0 +1,37 @@
+import javax.swing.Timer;
+import java.util.ArrayList;
+import java.util.List;
+
+// One Swing timer for every running animation in the app. Components register while they
+// are moving and drop out when done; with nothing registered the timer is stopped, so an
+// idle window gets no timer events at all. EDT only.
+final class AnimationTimer {
+
+    interface Animated {
+        // Advance to the given time (System.nanoTime); false once the animation is finished
+        boolean tick(long now);
+    }
+
+    private static final int FRAME_MS = 16;
+    private static final List<Animated> active = new ArrayList<>();
+    private static final Timer timer = new Timer(FRAME_MS, e -> tickAll());
+
+    private AnimationTimer() {
+    }
+
+    static void start(Animated a) {
+        if (!active.contains(a)) active.add(a);
+        if (!timer.isRunning()) timer.start();
+    }
+
+    static void stop(Animated a) {
+        active.remove(a);
+        if (active.isEmpty()) timer.stop();
+    }
+
+    private static void tickAll() {
+        long now = System.nanoTime();
+        active.removeIf(a -> !a.tick(now));
+        if (active.isEmpty()) timer.stop();
+    }
+}
@@ -0,0 +1,84 @@
+import javax.swing.JPanel;
+import java.awt.*;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+// Tasks on the list completed over time, from the first completion up to now. The range is cut into
+// one bucket per pixel column and each bucket is counted straight from the sorted
+// CompletionHistory (two binary searches), so the cost depends on the panel width, not
+// on how many completions there are.
+class CompletionChartPanel extends JPanel {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Color AXIS = Color.WHITE;
+    private static final Color BAR = new Color(0, 220, 80);
+    private static final int MARGIN = 40;
+    private static final DateTimeFormatter DATE = DateTimeFormatter.ofPattern("d.M.yyyy HH:mm")
+            .withZone(ZoneId.systemDefault());
+
+    private CompletionHistory history;
+    private int paintedModCount = -1;
+
+    void setHistory(CompletionHistory history) {
+        this.history = history;
+        paintedModCount = -1;
+        repaint();
+    }
+
+    // Repaints only if completions were added or removed since the last paint
+    void refresh() {
+        if (history != null && history.modCount() != paintedModCount) repaint();
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        Graphics2D g2 = (Graphics2D) g;
+        int w = getWidth(), h = getHeight();
+        int baseY = h - MARGIN;
+        int maxH = h - 2 * MARGIN;
+        int columns = w - 2 * MARGIN;
+
+        g2.setColor(AXIS);
+        g2.drawString("Completed tasks over time", MARGIN, MARGIN / 2 + 5);
+        g2.drawLine(MARGIN, baseY, w - MARGIN, baseY);
+
+        if (history == null || history.size() == 0 || columns <= 0 || maxH <= 0) {
+            g2.drawString("No completed tasks yet", MARGIN, baseY - 10);
+            if (history != null) paintedModCount = history.modCount();
+            return;
+        }
+        paintedModCount = history.modCount();
+
+        long from = history.first();
+        long to = Math.max(System.currentTimeMillis(), history.last()) + 1;
+        int[] counts = history.buckets(from, to, columns);
+        int max = 1;
+        for (int c : counts) max = Math.max(max, c);
+
+        g2.setColor(BAR);
+        for (int x = 0; x < columns; x++) {
+            if (counts[x] == 0) continue;
+            int bh = Math.max(1, (int) ((long) maxH * counts[x] / max));
+            g2.drawLine(MARGIN + x, baseY - 1, MARGIN + x, baseY - bh);
+        }
+
+        g2.setColor(AXIS);
+        FontMetrics fm = g2.getFontMetrics();
+        String start = DATE.format(Instant.ofEpochMilli(from));
+        String end = DATE.format(Instant.ofEpochMilli(to));
+        g2.drawString(start, MARGIN, baseY + 18);
+        g2.drawString(end, w - MARGIN - fm.stringWidth(end), baseY + 18);
+        String scale = "max " + max + " per " + duration((to - from) / columns) + ", " + history.size() + " total";
+        g2.drawString(scale, w - MARGIN - fm.stringWidth(scale), MARGIN / 2 + 5);
+    }
+
+    private static String duration(long millis) {
+        if (millis < 60_000) return Math.max(1, millis / 1000) + " s";
+        if (millis < 3_600_000) return millis / 60_000 + " min";
+        if (millis < 86_400_000) return millis / 3_600_000 + " h";
+        return millis / 86_400_000 + " d";
+    }
+}
@@ -0,0 +1,100 @@
+import java.util.Arrays;
+import java.util.List;
+
+// Completion times of the user's tasks as one sorted long[] column (no boxing, 8 bytes
+// per completion). Completions arrive in time order, so adding is an append; a count
+// for any time range is two binary searches, which is what lets the chart bucket years
+// of history per pixel column without looking at every entry.
+//
+// The history is derived from the list: it holds the completion times of the completed
+// tasks the user still has. Deleting a completed task therefore takes its completion out
+// of the chart, just as it lowers the completed count. That is deliberate. The shards do
+// not keep anything of a deleted task, so the chart shows the same thing before and after
+// a reload, and a task the user deleted leaves no trace behind.
+final class CompletionHistory {
+
+    private long[] times = new long[16];
+    private int size;
+    private int modCount;
+
+    // Completed todos with a known completion time
+    void rebuild(List<Todo> todos) {
+        size = 0;
+        for (Todo t : todos) {
+            if (t.completed > 0 && TodoStatus.COMPLETED.label.equals(t.status)) append(t.completed);
+        }
+        Arrays.sort(times, 0, size);
+        modCount++;
+    }
+
+    void clear() {
+        size = 0;
+        modCount++;
+    }
+
+    void add(long time) {
+        if (time <= 0) return;
+        int i = size == 0 || time >= times[size - 1] ? size : lowerBound(time);
+        append(0);
+        System.arraycopy(times, i, times, i + 1, size - 1 - i);
+        times[i] = time;
+        modCount++;
+    }
+
+    void remove(long time) {
+        if (time <= 0) return;
+        int i = lowerBound(time);
+        if (i < size && times[i] == time) {
+            System.arraycopy(times, i + 1, times, i, size - 1 - i);
+            size--;
+            modCount++;
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    long first() {
+        return times[0];
+    }
+
+    long last() {
+        return times[size - 1];
+    }
+
+    // Changes whenever the contents do; lets a view skip work when nothing changed
+    int modCount() {
+        return modCount;
+    }
+
+    // Completions in each of `buckets` equal slices of [from, to)
+    int[] buckets(long from, long to, int buckets) {
+        int[] counts = new int[buckets];
+        double step = (to - from) / (double) buckets;
+        int lo = lowerBound(from);
+        for (int b = 0; b < buckets; b++) {
+            long edge = b == buckets - 1 ? to : from + (long) Math.ceil(step * (b + 1));
+            int hi = lowerBound(edge);
+            counts[b] = hi - lo;
+            lo = hi;
+        }
+        return counts;
+    }
+
+    // First index whose time is >= t
+    private int lowerBound(long t) {
+        int lo = 0, hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (times[mid] < t) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private void append(long time) {
+        if (size == times.length) times = Arrays.copyOf(times, size * 2);
+        times[size++] = time;
+    }
+}
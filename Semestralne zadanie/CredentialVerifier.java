@@ -0,0 +1,51 @@
+import javax.swing.SwingUtilities;
+import java.util.Arrays;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+// Password work off the EDT. A PBKDF2 check is deliberately slow (tens of ms), so logins
+// and registrations run on a small pool of their own rather than the persistence thread,
+// where they would hold up saves. Callbacks run on the EDT. The hashing itself is timed
+// by PasswordHasher.
+class CredentialVerifier {
+
+    private static final int QUEUE_SIZE = 32;
+
+    private final ThreadPoolExecutor executor;
+
+    CredentialVerifier() {
+        int threads = Math.max(1, Math.min(2, Runtime.getRuntime().availableProcessors() / 2));
+        executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(QUEUE_SIZE), r -> {
+                    Thread t = new Thread(r, "credential-verifier");
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+
+    // A task that takes a password, e.g. a whole login through UserService; the password
+    // array is cleared once it is done
+    <T> void run(Callable<T> task, char[] password, Consumer<T> onDone, Consumer<Exception> onFailure) {
+        try {
+            executor.execute(() -> {
+                try {
+                    T result = task.call();
+                    SwingUtilities.invokeLater(() -> onDone.accept(result));
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    SwingUtilities.invokeLater(() -> onFailure.accept(e));
+                } finally {
+                    Arrays.fill(password, '\0');
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // queue full (someone hammering Login): fail fast instead of piling up work
+            Arrays.fill(password, '\0');
+            onFailure.accept(e);
+        }
+    }
+
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
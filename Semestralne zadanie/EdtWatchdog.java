@@ -0,0 +1,139 @@
+import javax.swing.SwingUtilities;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Deque;
+import java.util.List;
+
+// Measures how long the EDT takes to get to a freshly posted event, continuously: a
+// background thread posts a tiny probe every PROBE_MS and the probe records its queue
+// latency. If a probe waits longer than STALL_MS the EDT's stack is captured together
+// with the app action that was running (see begin/end), printed to stderr and kept
+// for report().
+final class EdtWatchdog {
+
+    static final class Stall {
+        final long startMillis;
+        final String action;
+        final StackTraceElement[] stack;
+        volatile long durationMillis = -1; // -1 while still stalled
+
+        Stall(long startMillis, String action, StackTraceElement[] stack) {
+            this.startMillis = startMillis;
+            this.action = action;
+            this.stack = stack;
+        }
+    }
+
+    private static final long PROBE_MS = 100;
+    // -Dstudenthelper.edt.stallMs=... to tune what counts as a stall
+    static final long STALL_MS = Math.max(PROBE_MS, Long.getLong("studenthelper.edt.stallMs", 500));
+    private static final int MAX_STALLS = 20;
+    private static final int STACK_DEPTH = 15;
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final Deque<Stall> stalls = new ArrayDeque<>();
+    private volatile String action;
+    private volatile Thread edt;
+    // nanoTime the outstanding probe was posted at, 0 when none is outstanding
+    private volatile long posted;
+    private volatile long lastLatency;
+    private Thread thread;
+
+    void start() {
+        thread = new Thread(this::watch, "edt-watchdog");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    void stop() {
+        if (thread != null) thread.interrupt();
+    }
+
+    // Marks what the EDT is doing; returns the previous action for end()
+    String begin(String name) {
+        String previous = action;
+        action = name;
+        return previous;
+    }
+
+    void end(String previous) {
+        action = previous;
+    }
+
+    LatencyHistogram latency() {
+        return latency;
+    }
+
+    private void watch() {
+        Stall current = null;
+        long lastPost = 0;
+        try {
+            while (true) {
+                long now = System.nanoTime();
+                long p = posted;
+                if (p == 0) {
+                    if (current != null) {
+                        current.durationMillis = lastLatency / 1_000_000;
+                        System.err.println("[edt] stall in " + current.action + " ended after "
+                                + current.durationMillis + " ms");
+                        current = null;
+                    }
+                    if (now - lastPost >= PROBE_MS * 1_000_000) {
+                        lastPost = now;
+                        post(now);
+                    }
+                } else if (current == null && now - p > STALL_MS * 1_000_000 && edt != null) {
+                    current = new Stall(System.currentTimeMillis() - (now - p) / 1_000_000,
+                            action != null ? action : "(no action)", edt.getStackTrace());
+                    synchronized (stalls) {
+                        if (stalls.size() == MAX_STALLS) stalls.removeFirst();
+                        stalls.addLast(current);
+                    }
+                    System.err.print("[edt] stalled > " + STALL_MS + " ms in " + current.action + "\n"
+                            + formatStack(current.stack));
+                }
+                Thread.sleep(PROBE_MS / 2);
+            }
+        } catch (InterruptedException e) {
+            // stopped
+        }
+    }
+
+    private void post(long at) {
+        posted = at;
+        SwingUtilities.invokeLater(() -> {
+            edt = Thread.currentThread();
+            long waited = System.nanoTime() - at;
+            latency.record(waited);
+            lastLatency = waited;
+            posted = 0;
+        });
+    }
+
+    // Latency summary and the most recent stalls, newest last
+    String report() {
+        List<Stall> copy;
+        synchronized (stalls) {
+            copy = new ArrayList<>(stalls);
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append("EDT event latency: ").append(latency.summary()).append('\n');
+        sb.append("Stalls over ").append(STALL_MS).append(" ms: ").append(copy.size()).append('\n');
+        SimpleDateFormat time = new SimpleDateFormat("HH:mm:ss");
+        for (Stall s : copy) {
+            sb.append('\n').append(time.format(new Date(s.startMillis))).append("  ").append(s.action).append("  ")
+                    .append(s.durationMillis < 0 ? "still stalled" : s.durationMillis + " ms").append('\n');
+            sb.append(formatStack(s.stack));
+        }
+        return sb.toString();
+    }
+
+    private static String formatStack(StackTraceElement[] stack) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < Math.min(stack.length, STACK_DEPTH); i++) sb.append("    at ").append(stack[i]).append('\n');
+        if (stack.length > STACK_DEPTH) sb.append("    ... ").append(stack.length - STACK_DEPTH).append(" more\n");
+        return sb.toString();
+    }
+}
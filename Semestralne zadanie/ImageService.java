@@ -0,0 +1,155 @@
+import javax.imageio.ImageIO;
+import javax.swing.SwingUtilities;
+import java.awt.*;
+import java.awt.image.BaseMultiResolutionImage;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+// Loads images off the EDT and keeps them: each file is decoded once, and each requested
+// size is scaled once into a multi-resolution image (1x, 2x and the screen's own scale),
+// so HiDPI screens get sharp pixels and repeated requests are a map lookup. Both caches
+// are small LRUs.
+class ImageService {
+
+    private static final int MAX_ORIGINALS = 4;
+    private static final int MAX_SCALED = 32;
+
+    private final ExecutorService loader = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "image-loader");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // decoded files and scaled variants by "path@size"; a decode that failed or found no
+    // file is dropped once it completes, so the next request reads the file again
+    private final Map<String, CompletableFuture<BufferedImage>> originals = lru(MAX_ORIGINALS);
+    private final Map<String, Image> scaled = lru(MAX_SCALED);
+
+    // onReady gets a size x size image on the EDT. It is never called if there is no such
+    // file or it cannot be read, so whatever placeholder the caller shows stays; a read
+    // error also goes to onFailure, on the EDT.
+    void load(String path, int size, Consumer<Image> onReady, Consumer<IOException> onFailure) {
+        String key = path + "@" + size;
+        Image hit;
+        CompletableFuture<BufferedImage> original = null;
+        boolean started = false;
+        synchronized (this) {
+            hit = scaled.get(key);
+            if (hit == null) {
+                original = originals.get(path);
+                if (original == null) {
+                    original = CompletableFuture.supplyAsync(() -> decode(path), loader);
+                    originals.put(path, original);
+                    started = true;
+                }
+            }
+        }
+        if (hit != null) {
+            deliver(hit, onReady);
+            return;
+        }
+        if (started) {
+            CompletableFuture<BufferedImage> decoding = original;
+            decoding.whenComplete((img, err) -> {
+                if (img == null) forget(path, decoding);
+            });
+        }
+
+        original.thenApplyAsync(img -> img == null ? null : scale(key, img, size), loader)
+                .whenComplete((img, err) -> {
+                    if (img != null) deliver(img, onReady);
+                    else if (err != null && onFailure != null) {
+                        Throwable cause = err instanceof CompletionException && err.getCause() != null ? err.getCause() : err;
+                        IOException e = cause instanceof IOException ? (IOException) cause : new IOException(cause);
+                        SwingUtilities.invokeLater(() -> onFailure.accept(e));
+                    }
+                });
+    }
+
+    private synchronized void forget(String path, CompletableFuture<BufferedImage> decoding) {
+        originals.remove(path, decoding);
+    }
+
+    private static void deliver(Image img, Consumer<Image> onReady) {
+        if (SwingUtilities.isEventDispatchThread()) onReady.accept(img);
+        else SwingUtilities.invokeLater(() -> onReady.accept(img));
+    }
+
+    // Null if there is no such file; a file that cannot be decoded is an error
+    private static BufferedImage decode(String path) {
+        File f = new File(path);
+        if (!f.isFile()) return null;
+        try {
+            BufferedImage img = ImageIO.read(f);
+            if (img == null) throw new IOException("Not an image in a supported format: " + path);
+            return img;
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private Image scale(String key, BufferedImage original, int size) {
+        synchronized (this) {
+            Image hit = scaled.get(key);
+            if (hit != null) return hit;
+        }
+
+        SortedSet<Double> scales = new TreeSet<>(Arrays.asList(1.0, 2.0, screenScale()));
+        List<Image> variants = new ArrayList<>();
+        for (double s : scales) variants.add(resize(original, (int) Math.round(size * s)));
+        Image img = new BaseMultiResolutionImage(variants.toArray(new Image[0]));
+
+        synchronized (this) {
+            scaled.put(key, img);
+        }
+        return img;
+    }
+
+    // Halves with bilinear filtering until close to the target, then one last step:
+    // about what SCALE_SMOOTH looks like, at a fraction of the cost
+    private static BufferedImage resize(BufferedImage src, int target) {
+        BufferedImage img = src;
+        int w = img.getWidth(), h = img.getHeight();
+        double ratio = target / (double) Math.max(w, h);
+        int tw = Math.max(1, (int) Math.round(w * ratio)), th = Math.max(1, (int) Math.round(h * ratio));
+
+        do {
+            w = w / 2 >= tw ? w / 2 : tw;
+            h = h / 2 >= th ? h / 2 : th;
+            BufferedImage next = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = next.createGraphics();
+            try {
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                g.drawImage(img, 0, 0, w, h, null);
+            } finally {
+                g.dispose();
+            }
+            img = next;
+        } while (w != tw || h != th);
+        return img;
+    }
+
+    private static double screenScale() {
+        if (GraphicsEnvironment.isHeadless()) return 1.0;
+        return GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+                .getDefaultConfiguration().getDefaultTransform().getScaleX();
+    }
+
+    private static <K, V> Map<K, V> lru(int max) {
+        return new LinkedHashMap<K, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > max;
+            }
+        };
+    }
+}
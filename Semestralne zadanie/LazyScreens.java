@@ -0,0 +1,65 @@
+import javax.swing.JPanel;
+import javax.swing.JTabbedPane;
+import java.awt.*;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+// Screens registered by name with a factory and built the first time they are shown,
+// on top of an ordinary CardLayout panel or JTabbedPane. Each screen sits in an empty
+// holder panel until then, so startup only pays for what is actually on display.
+final class LazyScreens {
+
+    private final Container container;
+    private final CardLayout cards; // null for tabs
+    private final Map<String, Supplier<? extends Component>> factories = new HashMap<>();
+    private final Map<String, JPanel> holders = new HashMap<>();
+
+    private LazyScreens(Container container, CardLayout cards) {
+        this.container = container;
+        this.cards = cards;
+    }
+
+    static LazyScreens cards(JPanel parent, CardLayout layout) {
+        return new LazyScreens(parent, layout);
+    }
+
+    // Tabs are built when first selected; the tab title is the screen name
+    static LazyScreens tabs(JTabbedPane tabs) {
+        LazyScreens screens = new LazyScreens(tabs, null);
+        tabs.addChangeListener(e -> {
+            int i = tabs.getSelectedIndex();
+            if (i >= 0) screens.build(tabs.getTitleAt(i));
+        });
+        return screens;
+    }
+
+    void add(String name, Supplier<? extends Component> factory) {
+        JPanel holder = new JPanel(new BorderLayout());
+        holder.setOpaque(false);
+        holders.put(name, holder);
+        factories.put(name, factory);
+        if (cards != null) container.add(holder, name);
+        else ((JTabbedPane) container).add(name, holder);
+    }
+
+    void show(String name) {
+        build(name);
+        if (cards != null) {
+            cards.show(container, name);
+        } else {
+            JTabbedPane tabs = (JTabbedPane) container;
+            tabs.setSelectedIndex(tabs.indexOfTab(name));
+        }
+    }
+
+    private void build(String name) {
+        Supplier<? extends Component> factory = factories.remove(name);
+        if (factory == null) return;
+        long start = System.nanoTime();
+        JPanel holder = holders.get(name);
+        holder.add(factory.get(), BorderLayout.CENTER);
+        holder.revalidate();
+        StartupTimer.log("built " + name, start);
+    }
+}
@@ -0,0 +1,159 @@
+import javax.management.*;
+import java.lang.management.ManagementFactory;
+import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+// Counters, gauges and timers for the app's operations. Each one is published as an MBean
+// named "studenthelper:type=<Counter|Gauge|Timer>,name=<name>", so jconsole or any JMX
+// client can read them live. Recording never locks or allocates: counters are LongAdders
+// and a timer spreads threads over a few histogram stripes that are merged only on read.
+final class Metrics {
+
+    static final String DOMAIN = "studenthelper";
+    // a power of two, roughly one stripe per core
+    private static final int STRIPES = Math.min(8, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1));
+
+    private static final Map<String, Object> registered = new ConcurrentHashMap<>();
+
+    private Metrics() {
+    }
+
+    static final class Counter {
+        private final LongAdder count = new LongAdder();
+
+        void inc() {
+            count.increment();
+        }
+
+        void add(long n) {
+            count.add(n);
+        }
+
+        long get() {
+            return count.sum();
+        }
+    }
+
+    static final class Timer {
+        private final LatencyHistogram[] stripes = new LatencyHistogram[STRIPES];
+
+        private Timer() {
+            for (int i = 0; i < stripes.length; i++) stripes[i] = new LatencyHistogram();
+        }
+
+        void record(long nanos) {
+            stripes[(int) Thread.currentThread().getId() & (STRIPES - 1)].record(nanos);
+        }
+
+        // A merged copy of all stripes
+        LatencyHistogram snapshot() {
+            LatencyHistogram merged = new LatencyHistogram();
+            for (LatencyHistogram h : stripes) h.addTo(merged);
+            return merged;
+        }
+    }
+
+    static Counter counter(String name) {
+        return (Counter) registered.computeIfAbsent("Counter/" + name, k -> {
+            Counter c = new Counter();
+            publish("Counter", name, new Bean().attribute("Count", Long.class, c::get));
+            return c;
+        });
+    }
+
+    static Timer timer(String name) {
+        return (Timer) registered.computeIfAbsent("Timer/" + name, k -> {
+            Timer t = new Timer();
+            publish("Timer", name, new Bean()
+                    .attribute("Count", Long.class, () -> t.snapshot().count())
+                    .attribute("MeanMs", Double.class, () -> t.snapshot().mean() / 1e6)
+                    .attribute("P50Ms", Double.class, () -> t.snapshot().percentile(50) / 1e6)
+                    .attribute("P90Ms", Double.class, () -> t.snapshot().percentile(90) / 1e6)
+                    .attribute("P99Ms", Double.class, () -> t.snapshot().percentile(99) / 1e6)
+                    .attribute("P999Ms", Double.class, () -> t.snapshot().percentile(99.9) / 1e6)
+                    .attribute("MaxMs", Double.class, () -> t.snapshot().max() / 1e6)
+                    .attribute("Summary", String.class, () -> t.snapshot().summary()));
+            return t;
+        });
+    }
+
+    // value is called from JMX threads, so it must be safe to call off the EDT
+    static void gauge(String name, LongSupplier value) {
+        registered.computeIfAbsent("Gauge/" + name, k -> {
+            publish("Gauge", name, new Bean().attribute("Value", Long.class, value::getAsLong));
+            return value;
+        });
+    }
+
+    // Metrics are optional: if JMX is unavailable they are still recorded, just not published
+    private static void publish(String type, String name, Bean bean) {
+        try {
+            ObjectName id = new ObjectName(DOMAIN, new Hashtable<>(Map.of("type", type, "name", name)));
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(id)) server.unregisterMBean(id);
+            server.registerMBean(bean, id);
+        } catch (JMException | SecurityException e) {
+            System.err.println("Cannot publish metric " + name + ": " + e);
+        }
+    }
+
+    // Read-only MBean whose attributes are computed when read
+    private static final class Bean implements DynamicMBean {
+        private final Map<String, Supplier<?>> values = new LinkedHashMap<>();
+        private final Map<String, Class<?>> types = new LinkedHashMap<>();
+
+        Bean attribute(String name, Class<?> type, Supplier<?> value) {
+            values.put(name, value);
+            types.put(name, type);
+            return this;
+        }
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            Supplier<?> value = values.get(attribute);
+            if (value == null) throw new AttributeNotFoundException(attribute);
+            return value.get();
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            AttributeList list = new AttributeList();
+            for (String a : attributes) {
+                Supplier<?> value = values.get(a);
+                if (value != null) list.add(new Attribute(a, value.get()));
+            }
+            return list;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException(attribute.getName() + " is read-only");
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String action, Object[] params, String[] signature) throws ReflectionException {
+            throw new ReflectionException(new NoSuchMethodException(action));
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            MBeanAttributeInfo[] attrs = new MBeanAttributeInfo[types.size()];
+            int i = 0;
+            for (Map.Entry<String, Class<?>> e : types.entrySet()) {
+                attrs[i++] = new MBeanAttributeInfo(e.getKey(), e.getValue().getName(), e.getKey(),
+                        true, false, false);
+            }
+            return new MBeanInfo(Metrics.class.getName(), "StudentHelper metric", attrs, null, null, null);
+        }
+    }
+}
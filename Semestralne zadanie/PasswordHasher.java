@@ -0,0 +1,107 @@
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+// Salted PBKDF2-HMAC-SHA256 password hashes, stored in User.password as
+// "pbkdf2$<iterations>$<salt>$<hash>" (Base64). Anything without that prefix is a
+// plaintext password from before hashing; it still verifies and is then replaced.
+// The cost is set with -Dstudenthelper.hash.iterations; records hashed with fewer
+// iterations are rehashed on the next successful login. Every PBKDF2 run of hash() and
+// verify() is timed into latency(), the number to tune the cost against.
+final class PasswordHasher {
+
+    private static final String PREFIX = "pbkdf2$";
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+    private static final int DEFAULT_ITERATIONS = 210_000;
+
+    static final int ITERATIONS = Math.max(1_000,
+            Integer.getInteger("studenthelper.hash.iterations", DEFAULT_ITERATIONS));
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final LatencyHistogram LATENCY = new LatencyHistogram();
+
+    // Compared against when the user does not exist, so that case costs the same time
+    private static final String DUMMY = encode(newSalt(), "not a real password".toCharArray(), false);
+
+    private PasswordHasher() {
+    }
+
+    static String hash(char[] password) {
+        return encode(newSalt(), password, true);
+    }
+
+    // Time spent in PBKDF2 only: no disk, no network, no waiting for a worker thread
+    static LatencyHistogram latency() {
+        return LATENCY;
+    }
+
+    private static byte[] newSalt() {
+        byte[] salt = new byte[SALT_BYTES];
+        RANDOM.nextBytes(salt);
+        return salt;
+    }
+
+    private static String encode(byte[] salt, char[] password, boolean timed) {
+        Base64.Encoder b64 = Base64.getEncoder().withoutPadding();
+        return PREFIX + ITERATIONS + "$" + b64.encodeToString(salt) + "$"
+                + b64.encodeToString(pbkdf2(password, salt, ITERATIONS, timed));
+    }
+
+    // stored may be null (unknown user): a dummy hash is checked and false returned
+    static boolean verify(String stored, char[] password) {
+        if (stored == null) {
+            verify(DUMMY, password);
+            return false;
+        }
+        if (!stored.startsWith(PREFIX)) return plaintextEquals(stored, password);
+
+        String[] parts = stored.split("\\$");
+        if (parts.length != 4) return false;
+        try {
+            int iterations = Integer.parseInt(parts[1]);
+            byte[] salt = Base64.getDecoder().decode(parts[2]);
+            byte[] expected = Base64.getDecoder().decode(parts[3]);
+            return MessageDigest.isEqual(expected, pbkdf2(password, salt, iterations, true));
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    // Plaintext, or hashed with a lower cost than the current setting
+    static boolean needsRehash(String stored) {
+        if (!stored.startsWith(PREFIX)) return true;
+        int end = stored.indexOf('$', PREFIX.length());
+        try {
+            return end < 0 || Integer.parseInt(stored.substring(PREFIX.length(), end)) < ITERATIONS;
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+    // timed is false only for DUMMY, built while the class loads
+    private static byte[] pbkdf2(char[] password, byte[] salt, int iterations, boolean timed) {
+        long start = System.nanoTime();
+        PBEKeySpec spec = new PBEKeySpec(password, salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " is not available", e);
+        } finally {
+            spec.clearPassword();
+            if (timed) LATENCY.record(System.nanoTime() - start);
+        }
+    }
+
+    // Length-independent time, like MessageDigest.isEqual
+    private static boolean plaintextEquals(String stored, char[] password) {
+        if (stored.isEmpty()) return false;
+        int diff = stored.length() ^ password.length;
+        for (int i = 0; i < password.length; i++) diff |= stored.charAt(i % stored.length()) ^ password[i];
+        return diff == 0;
+    }
+}
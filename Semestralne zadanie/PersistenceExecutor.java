@@ -0,0 +1,74 @@
+import javax.swing.SwingUtilities;
+import java.io.IOException;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+// One background thread for all user-data disk work, so the EDT never waits on the disk.
+// Tasks run in submission order; results and errors are handed back on the EDT.
+class PersistenceExecutor {
+
+    interface Task<T> {
+        T call() throws IOException;
+    }
+
+    interface Action {
+        void run() throws IOException;
+    }
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "persistence");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private volatile boolean shutDown;
+
+    <T> void submit(Task<T> task, Consumer<T> onDone, Consumer<IOException> onFailure) {
+        if (shutDown) return;
+        executor.execute(() -> {
+            try {
+                T result = task.call();
+                if (onDone != null) SwingUtilities.invokeLater(() -> onDone.accept(result));
+            } catch (IOException e) {
+                e.printStackTrace();
+                if (onFailure != null) SwingUtilities.invokeLater(() -> onFailure.accept(e));
+            }
+        });
+    }
+
+    void run(Action action, Consumer<IOException> onFailure) {
+        submit(() -> {
+            action.run();
+            return null;
+        }, null, onFailure);
+    }
+
+    // Waits for a journal write on the persistence thread, unwrapping its IOException
+    static void await(CompletableFuture<?> written) throws IOException {
+        try {
+            written.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+    }
+
+    // Runs everything already queued, then the final action; used on exit so that
+    // System.exit cannot drop pending writes. Safe to call more than once.
+    void shutdown(Action last, long timeoutMillis) {
+        synchronized (this) {
+            if (!shutDown) {
+                if (last != null) run(last, null);
+                shutDown = true;
+                executor.shutdown();
+            }
+        }
+        try {
+            if (!executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                System.err.println("Pending saves did not finish in " + timeoutMillis + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
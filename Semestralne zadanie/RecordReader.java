@@ -0,0 +1,86 @@
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+// Reader for the compact record format (see RecordWriter). The legacy mode reads the
+// DataOutputStream payloads of formats 1 and 2 through the same calls, so migration code
+// does not need a second parser.
+final class RecordReader {
+
+    private final byte[] buf;
+    private int pos;
+    private final int end;
+    private final DataInputStream legacy;
+    private List<String> strings;
+
+    private RecordReader(byte[] buf, int off, int len, boolean legacyFormat) {
+        this.buf = buf;
+        this.pos = off;
+        this.end = off + len;
+        this.legacy = legacyFormat ? new DataInputStream(new ByteArrayInputStream(buf, off, len)) : null;
+    }
+
+    static RecordReader of(byte[] buf, int off, int len) {
+        return new RecordReader(buf, off, len, false);
+    }
+
+    static RecordReader legacy(byte[] buf, int off, int len) {
+        return new RecordReader(buf, off, len, true);
+    }
+
+    byte readByte() throws IOException {
+        if (legacy != null) return legacy.readByte();
+        if (pos >= end) throw new EOFException();
+        return buf[pos++];
+    }
+
+    long readVarLong() throws IOException {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = readByte();
+            v |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return v;
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    // Counts and indexes (writeInt in the legacy format)
+    int readVarInt() throws IOException {
+        if (legacy != null) return legacy.readInt();
+        long v = readVarLong();
+        if (v > Integer.MAX_VALUE) throw new IOException("Varint out of range");
+        return (int) v;
+    }
+
+    long readOffset() throws IOException {
+        if (legacy != null) return legacy.readLong();
+        return readVarLong() - 1;
+    }
+
+    String readStatus() throws IOException {
+        if (legacy != null) return legacy.readBoolean() ? TodoStatus.COMPLETED.label : TodoStatus.PENDING.label;
+        return TodoStatus.fromCode(readByte()).label;
+    }
+
+    String readString() throws IOException {
+        if (legacy != null) return legacy.readUTF();
+        if (strings == null) strings = new ArrayList<>();
+
+        int tag = readVarInt();
+        if ((tag & 1) != 0) {
+            int ref = tag >>> 1;
+            if (ref >= strings.size()) throw new IOException("Bad string reference " + ref);
+            return strings.get(ref);
+        }
+        int len = tag >>> 1;
+        if (len > end - pos) throw new EOFException();
+        String s = new String(buf, pos, len, StandardCharsets.UTF_8);
+        pos += len;
+        strings.add(s);
+        return s;
+    }
+}
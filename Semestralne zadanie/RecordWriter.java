@@ -0,0 +1,85 @@
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+// Writer for the compact record format (format 3) used by the journal and the todo shards.
+// Numbers are unsigned LEB128 varints, strings are UTF-8 behind a varint length, and a
+// string this writer has already written is replaced by a short back reference, so a
+// list full of repeated tasks ("Homework", "Lab report") stores each text once.
+final class RecordWriter {
+
+    private byte[] buf;
+    private int pos;
+    private Map<String, Integer> strings;
+
+    RecordWriter() {
+        this(64);
+    }
+
+    RecordWriter(int capacity) {
+        buf = new byte[Math.max(16, capacity)];
+    }
+
+    RecordWriter writeByte(int b) {
+        ensure(1);
+        buf[pos++] = (byte) b;
+        return this;
+    }
+
+    RecordWriter writeVarInt(int v) {
+        if (v < 0) throw new IllegalArgumentException("Negative varint " + v);
+        return writeVarLong(v);
+    }
+
+    RecordWriter writeVarLong(long v) {
+        ensure(10);
+        while ((v & ~0x7FL) != 0) {
+            buf[pos++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        buf[pos++] = (byte) v;
+        return this;
+    }
+
+    // Journal offsets; -1 (no previous record) becomes 0
+    RecordWriter writeOffset(long offset) {
+        return writeVarLong(offset + 1);
+    }
+
+    RecordWriter writeStatus(String status) {
+        return writeByte(TodoStatus.of(status).code());
+    }
+
+    // tag = (length << 1) for a new string, (index << 1) | 1 for one written before
+    RecordWriter writeString(String s) {
+        if (strings == null) strings = new HashMap<>();
+        Integer ref = strings.get(s);
+        if (ref != null) return writeVarInt(ref << 1 | 1);
+
+        strings.put(s, strings.size());
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(bytes.length << 1);
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buf, pos, bytes.length);
+        pos += bytes.length;
+        return this;
+    }
+
+    int size() {
+        return pos;
+    }
+
+    byte[] toByteArray() {
+        byte[] out = new byte[pos];
+        System.arraycopy(buf, 0, out, 0, pos);
+        return out;
+    }
+
+    private void ensure(int n) {
+        if (pos + n > buf.length) {
+            byte[] bigger = new byte[Math.max(buf.length * 2, pos + n)];
+            System.arraycopy(buf, 0, bigger, 0, pos);
+            buf = bigger;
+        }
+    }
+}
@@ -1,24 +1,61 @@
 import javax.swing.*;
-import javax.swing.table.DefaultTableModel;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.filechooser.FileNameExtensionFilter;
+import javax.swing.table.TableRowSorter;
 import java.awt.*;
 import java.awt.event.ActionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.io.*;
 import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 
 public class StudentHelperApp extends JFrame {
 
-    private static final String DATA_FILE = "users.dat";
+    static final String DATA_FILE = "users.dat";
+    static final String JOURNAL_FILE = "users.log";
+    static final String INDEX_FILE = "users.idx";
+    static final String TODOS_DIR = "todos";
+    private static final long EXIT_FLUSH_TIMEOUT_MS = 10_000;
+    private static final int IMPORT_BATCH = 50_000;
+    // batches read from the file but not stored yet; the reader waits beyond that
+    private static final int IMPORT_IN_FLIGHT = 2;
+    // -Dstudenthelper.server=host[:port] keeps accounts on a SyncServer instead of local files
+    private static final String SERVER = System.getProperty("studenthelper.server");
+    private static final int SYNC_INTERVAL_MS = 3_000;
     private static final String LOGO_PATH = "C:\\Users\\User\\Downloads\\Adobe Express - file.png";
 
-    // CardLayout = simple screen switcher (LOGIN / REGISTER / CABINET)
+    // CardLayout = simple screen switcher (LOGIN / REGISTER / CABINET); each screen and
+    // each cabinet tab is built the first time it is shown
     private final CardLayout cardLayout;
     private final JPanel mainPanel;
-
-    // In-memory "storage" of users (persisted to DATA_FILE)
-    private Map<String, User> users;
-    private User currentUser;
+    private final LazyScreens screens;
+
+    // Users live on disk (JOURNAL_FILE + INDEX_FILE, todos in TODOS_DIR shards) behind the
+    // thread-safe UserService; only logged-in accounts are in memory. Logins run on the
+    // verifier pool, everything else on the persistence thread, so table edits reach the
+    // service in the order they were made on screen.
+    private final PersistenceExecutor persistence = new PersistenceExecutor();
+    private final TodoShards shards = new TodoShards(Paths.get(TODOS_DIR));
+    private final CredentialVerifier verifier = new CredentialVerifier();
+    private final ImageService images = new ImageService();
+    // EDT queue latency and stalls, tagged with the action running at the time
+    private final EdtWatchdog watchdog = new EdtWatchdog();
+    // completed by loadUsers; a login started before that just waits on the verifier pool
+    private final CompletableFuture<AccountService> service = new CompletableFuture<>();
+    private boolean refreshQueued;
+    private AccountService.Session session;
+    private boolean todosLoaded;
 
     // Login UI
     private JTextField loginUsernameField;
@@ -32,16 +69,31 @@ public class StudentHelperApp extends JFrame {
 
     // Cabinet UI
     private JLabel welcomeLabel;
-    private DefaultTableModel todoModel;
+    // Exists from the start (login loads into it); the table itself is built with its tab
+    private final TodoTableModel todoModel = new TodoTableModel();
     private JTextField todoTextField;
+    private JTextField todoSearchField;
+    private JComboBox<String> todoStatusFilter;
+    private TableRowSorter<TodoTableModel> todoSorter;
+    private SwingWorker<?, ?> todoTransfer;
 
     // Profile UI labels
     private JLabel profileUsernameLabel;
     private JLabel profileEmailLabel;
     private JLabel profileStudentIdLabel;
 
-    // Chart panel (custom painted)
+    // Chart panels (custom painted)
     private TaskStatsPanel statsPanel;
+    private CompletionChartPanel historyPanel;
+    private boolean statsUpdateQueued;
+
+    // Published over JMX (see Metrics); times are from the click to the result on screen
+    private static final Metrics.Timer LOGIN_TIME = Metrics.timer("login");
+    private static final Metrics.Counter LOGIN_FAILURES = Metrics.counter("login.failures");
+    private static final Metrics.Timer REGISTER_TIME = Metrics.timer("register");
+    private static final Metrics.Timer SAVE_TIME = Metrics.timer("saveUserTodos");
+    private static final Metrics.Timer LOAD_USERS_TIME = Metrics.timer("loadUsers");
+    private static final Metrics.Timer STATISTICS_TIME = Metrics.timer("updateStatistics");
 
     // Theme colors
     private static final Color BG_MAIN = new Color(18, 18, 18);
@@ -50,44 +102,70 @@ public class StudentHelperApp extends JFrame {
     private static final Color GREEN_HOVER = new Color(0, 200, 80);
 
     public StudentHelperApp() {
+        long buildStart = System.nanoTime();
+        watchdog.start();
         loadUsers();
 
         setTitle("TUKE Student Helper");
         setSize(900, 700);
-        setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE);
+        addWindowListener(new WindowAdapter() {
+            @Override public void windowClosing(WindowEvent e) { exitApp(); }
+        });
+        // Ctrl+C and other exits that skip exitApp() still get the pending writes out
+        Runtime.getRuntime().addShutdownHook(new Thread(
+                () -> persistence.shutdown(this::closeStore, EXIT_FLUSH_TIMEOUT_MS)));
         setLocationRelativeTo(null);
         getContentPane().setBackground(BG_MAIN);
 
+        todoModel.addTableModelListener(e -> scheduleStatistics());
+        // plain reads of EDT-owned counters; a slightly stale value is fine for monitoring
+        Metrics.gauge("todos.pending", todoModel::pendingCount);
+        Metrics.gauge("todos.completed", todoModel::completedCount);
+        Metrics.gauge("edt.latencyP99Micros", () -> watchdog.latency().percentile(99) / 1000);
+        // against a server, changes made on other devices are pulled in every few seconds
+        if (SERVER != null) new javax.swing.Timer(SYNC_INTERVAL_MS, e -> refreshTodos()).start();
+
         cardLayout = new CardLayout();
-        mainPanel = new JPanel(cardLayout);
+        mainPanel = new JPanel(cardLayout) {
+            private boolean painted;
+
+            @Override
+            public void paint(Graphics g) {
+                super.paint(g);
+                if (!painted) {
+                    painted = true;
+                    StartupTimer.log("first paint", buildStart);
+                }
+            }
+        };
         mainPanel.setBackground(BG_MAIN);
 
-        mainPanel.add(createLoginPanel(), "LOGIN");
-        mainPanel.add(createRegisterPanel(), "REGISTER");
-        mainPanel.add(createCabinetPanel(), "CABINET");
+        screens = LazyScreens.cards(mainPanel, cardLayout);
+        screens.add("LOGIN", this::createLoginPanel);
+        screens.add("REGISTER", this::createRegisterPanel);
+        screens.add("CABINET", this::createCabinetPanel);
 
         setJMenuBar(createMenuBar());
         add(mainPanel);
-        cardLayout.show(mainPanel, "LOGIN");
+        screens.show("LOGIN");
+        StartupTimer.log("build UI", buildStart);
     }
 
-    // Loads logo from absolute path; shows fallback text if missing
+    // Logo from absolute path, loaded by the image service in the background; the
+    // fallback text is shown until then (and for good if the file is missing)
     private JLabel createLogoLabel(int sizePx) {
-        File f = new File(LOGO_PATH);
-        if (!f.exists()) {
-            JLabel fallback = new JLabel("TUKE");
-            fallback.setHorizontalAlignment(SwingConstants.CENTER);
-            fallback.setForeground(GREEN);
-            fallback.setFont(new Font("Consolas", Font.BOLD, 36));
-            return fallback;
-        }
-
-        ImageIcon icon = new ImageIcon(LOGO_PATH);
-        Image scaled = icon.getImage().getScaledInstance(sizePx, sizePx, Image.SCALE_SMOOTH);
-
-        JLabel logo = new JLabel(new ImageIcon(scaled));
+        JLabel logo = new JLabel("TUKE");
         logo.setHorizontalAlignment(SwingConstants.CENTER);
         logo.setVerticalAlignment(SwingConstants.CENTER);
+        logo.setForeground(GREEN);
+        logo.setFont(new Font("Consolas", Font.BOLD, 36));
+        logo.setPreferredSize(new Dimension(sizePx, sizePx));
+
+        images.load(LOGO_PATH, sizePx, img -> {
+            logo.setText(null);
+            logo.setIcon(new ImageIcon(img));
+        }, e -> System.err.println("Cannot load the logo: " + e.getMessage()));
         return logo;
     }
 
@@ -127,13 +205,13 @@ public class StudentHelperApp extends JFrame {
         app.setForeground(Color.WHITE);
 
         JMenuItem home = new JMenuItem("Home");
-        home.addActionListener(e -> cardLayout.show(mainPanel, currentUser == null ? "LOGIN" : "CABINET"));
+        home.addActionListener(e -> screens.show(session == null ? "LOGIN" : "CABINET"));
 
         JMenuItem logout = new JMenuItem("Logout");
         logout.addActionListener(e -> logout());
 
         JMenuItem exit = new JMenuItem("Exit");
-        exit.addActionListener(e -> System.exit(0));
+        exit.addActionListener(e -> exitApp());
 
         app.add(home);
         app.add(logout);
@@ -148,13 +226,24 @@ public class StudentHelperApp extends JFrame {
                 JOptionPane.showMessageDialog(this, "TUKE Student Helper\nGreen-Black Edition", "About",
                         JOptionPane.INFORMATION_MESSAGE));
 
+        JMenuItem responsiveness = new JMenuItem("Responsiveness");
+        responsiveness.addActionListener(e -> showResponsiveness());
+
         help.add(about);
+        help.add(responsiveness);
 
         bar.add(app);
         bar.add(help);
         return bar;
     }
 
+    private void showResponsiveness() {
+        JTextArea text = new JTextArea(watchdog.report(), 20, 70);
+        text.setEditable(false);
+        text.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        JOptionPane.showMessageDialog(this, new JScrollPane(text), "Responsiveness", JOptionPane.INFORMATION_MESSAGE);
+    }
+
     private JPanel createLoginPanel() {
         JPanel panel = new JPanel(new BorderLayout());
         panel.setBackground(BG_MAIN);
@@ -208,8 +297,8 @@ public class StudentHelperApp extends JFrame {
 
         JPanel buttons = new JPanel();
         buttons.setBackground(BG_PANEL);
-        buttons.add(createButton("Login", null, e -> login()));
-        buttons.add(createButton("Register", null, e -> cardLayout.show(mainPanel, "REGISTER")));
+        buttons.add(createButton("Login", null, e -> traced("login", this::login)));
+        buttons.add(createButton("Register", null, e -> screens.show("REGISTER")));
 
         form.add(buttons, gbc);
 
@@ -286,8 +375,8 @@ public class StudentHelperApp extends JFrame {
 
         JPanel btns = new JPanel();
         btns.setBackground(BG_PANEL);
-        btns.add(createButton("Register", null, e2 -> register()));
-        btns.add(createButton("Back", null, e2 -> cardLayout.show(mainPanel, "LOGIN")));
+        btns.add(createButton("Register", null, e2 -> traced("register", this::register)));
+        btns.add(createButton("Back", null, e2 -> screens.show("LOGIN")));
 
         form.add(btns, gbc);
 
@@ -338,10 +427,11 @@ public class StudentHelperApp extends JFrame {
             }
         });
 
-        tabs.add("Quick Links", createQuickLinksPanel());
-        tabs.add("ToDo List", createTodoPanel());
-        tabs.add("Statistics", createStatisticsPanel());
-        tabs.add("Profile", createProfilePanel());
+        LazyScreens tabScreens = LazyScreens.tabs(tabs);
+        tabScreens.add("Quick Links", this::createQuickLinksPanel);
+        tabScreens.add("ToDo List", this::createTodoPanel);
+        tabScreens.add("Statistics", this::createStatisticsPanel);
+        tabScreens.add("Profile", this::createProfilePanel);
 
         panel.add(tabs, BorderLayout.CENTER);
         return panel;
@@ -382,12 +472,38 @@ public class StudentHelperApp extends JFrame {
         input.add(todoTextField, BorderLayout.CENTER);
         input.add(add, BorderLayout.EAST);
 
-        String[] cols = {"Task", "Status"};
-        todoModel = new DefaultTableModel(cols, 0) {
-            @Override public boolean isCellEditable(int row, int column) { return false; }
-        };
+        // Search + status filter row
+        JPanel filter = new JPanel(new BorderLayout(10, 0));
+        filter.setBackground(BG_PANEL);
+        filter.setBorder(BorderFactory.createEmptyBorder(10, 0, 10, 0));
+
+        JLabel searchLabel = new JLabel("Search:");
+        searchLabel.setForeground(Color.WHITE);
+
+        todoSearchField = new JTextField();
+        styleField(todoSearchField);
+        todoSearchField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override public void insertUpdate(DocumentEvent e) { applyTodoFilter(); }
+            @Override public void removeUpdate(DocumentEvent e) { applyTodoFilter(); }
+            @Override public void changedUpdate(DocumentEvent e) { applyTodoFilter(); }
+        });
+
+        todoStatusFilter = new JComboBox<>(new String[]{"All", TodoStatus.PENDING.label, TodoStatus.COMPLETED.label});
+        todoStatusFilter.addActionListener(e -> applyTodoFilter());
+
+        filter.add(searchLabel, BorderLayout.WEST);
+        filter.add(todoSearchField, BorderLayout.CENTER);
+        filter.add(todoStatusFilter, BorderLayout.EAST);
+
+        JPanel north = new JPanel(new BorderLayout());
+        north.setBackground(BG_PANEL);
+        north.add(input, BorderLayout.NORTH);
+        north.add(filter, BorderLayout.SOUTH);
+
+        todoSorter = new TableRowSorter<>(todoModel);
 
         JTable table = new JTable(todoModel);
+        table.setRowSorter(todoSorter);
         table.setBackground(BG_MAIN);
         table.setForeground(Color.WHITE);
         table.setSelectionBackground(GREEN);
@@ -403,30 +519,58 @@ public class StudentHelperApp extends JFrame {
         btns.setBackground(BG_PANEL);
 
         JButton complete = createButton("Mark Complete", null, e -> {
-            int row = table.getSelectedRow();
-            if (row >= 0) {
-                todoModel.setValueAt("Completed", row, 1);
-                updateStatistics();
+            int viewRow = table.getSelectedRow();
+            if (viewRow < 0 || !todosLoaded) return;
+            int row = table.convertRowIndexToModel(viewRow);
+            if (todoModel.complete(row)) {
+                AccountService.Session s = session;
+                long when = todoModel.getTodo(row).completed;
+                persistence.run(() -> requireService().complete(s, row, when), this::editFailed);
             }
         });
 
         JButton del = createButton("Delete", null, e -> {
-            int row = table.getSelectedRow();
-            if (row >= 0) {
-                todoModel.removeRow(row);
-                updateStatistics();
+            int viewRow = table.getSelectedRow();
+            if (viewRow >= 0 && todosLoaded) {
+                int row = table.convertRowIndexToModel(viewRow);
+                todoModel.remove(row);
+                AccountService.Session s = session;
+                persistence.run(() -> requireService().delete(s, row), this::editFailed);
             }
         });
 
+        btns.add(createButton("Import...", null, e -> importTodos()));
+        btns.add(createButton("Export...", null, e -> exportTodos()));
         btns.add(complete);
         btns.add(del);
 
-        panel.add(input, BorderLayout.NORTH);
+        panel.add(north, BorderLayout.NORTH);
         panel.add(scroll, BorderLayout.CENTER);
         panel.add(btns, BorderLayout.SOUTH);
         return panel;
     }
 
+    // Text query and status combined; the text part is answered by the model's search index
+    private void applyTodoFilter() {
+        String query = todoSearchField.getText().trim();
+        String status = (String) todoStatusFilter.getSelectedItem();
+        boolean anyStatus = "All".equals(status);
+
+        if (query.isEmpty() && anyStatus) {
+            todoSorter.setRowFilter(null);
+            return;
+        }
+
+        Predicate<Todo> text = query.isEmpty() ? t -> true : todoModel.searchIndex().matcher(query);
+        todoSorter.setRowFilter(new RowFilter<TodoTableModel, Integer>() {
+            @Override
+            public boolean include(Entry<? extends TodoTableModel, ? extends Integer> entry) {
+                Todo t = entry.getModel().getTodo(entry.getIdentifier());
+                return (anyStatus || status.equals(t.status)) && text.test(t);
+            }
+        });
+    }
+
     private JPanel createStatisticsPanel() {
         JPanel panel = new JPanel(new BorderLayout());
         panel.setBackground(BG_PANEL);
@@ -439,14 +583,23 @@ public class StudentHelperApp extends JFrame {
         statsPanel = new TaskStatsPanel();
         statsPanel.setBackground(BG_MAIN);
 
-        JButton refresh = createButton("Refresh", null, e -> updateStatistics());
+        historyPanel = new CompletionChartPanel();
+        historyPanel.setBackground(BG_MAIN);
+        historyPanel.setHistory(todoModel.history());
+
+        JPanel charts = new JPanel(new GridLayout(2, 1, 0, 10));
+        charts.setBackground(BG_PANEL);
+        charts.add(statsPanel);
+        charts.add(historyPanel);
+
+        JButton refresh = createButton("Refresh", null, e -> refreshStatistics());
 
         JPanel btn = new JPanel();
         btn.setBackground(BG_PANEL);
         btn.add(refresh);
 
         panel.add(title, BorderLayout.NORTH);
-        panel.add(statsPanel, BorderLayout.CENTER);
+        panel.add(charts, BorderLayout.CENTER);
         panel.add(btn, BorderLayout.SOUTH);
 
         updateStatistics();
@@ -500,228 +653,435 @@ public class StudentHelperApp extends JFrame {
         profileStudentIdLabel.setForeground(Color.WHITE);
         panel.add(profileStudentIdLabel, gbc);
 
+        updateProfilePanel();
+
         return panel;
     }
 
     // ===== Business logic =====
 
     private void login() {
+        long start = System.nanoTime();
         String user = loginUsernameField.getText().trim();
-        String pass = new String(loginPasswordField.getPassword());
+        char[] pass = loginPasswordField.getPassword();
 
-        if (user.isEmpty() || pass.isEmpty()) {
+        if (user.isEmpty() || pass.length == 0) {
             JOptionPane.showMessageDialog(this, "Fill all fields!");
             return;
         }
 
-        User u = users.get(user);
-        if (u != null && u.password.equals(pass)) {
-            currentUser = u;
-            welcomeLabel.setText("Welcome, " + currentUser.username + "!");
+        // on the verifier pool: the hash check is slow, and an unknown user costs the same
+        verifier.run(() -> requireService().login(user, pass), pass, s -> traced("login", () -> {
+            LOGIN_TIME.record(System.nanoTime() - start);
+            if (s == null) {
+                LOGIN_FAILURES.inc();
+                JOptionPane.showMessageDialog(this, "Invalid credentials!");
+                return;
+            }
+            if (session != null) endSession();
+            session = s;
+            screens.show("CABINET");
+            welcomeLabel.setText("Welcome, " + session.username + "!");
             loadUserTodos();
             updateProfilePanel();
-            updateStatistics();
-            cardLayout.show(mainPanel, "CABINET");
             loginPasswordField.setText("");
-        } else {
-            JOptionPane.showMessageDialog(this, "Invalid credentials!");
-        }
+        }), e -> JOptionPane.showMessageDialog(this, "Cannot read user data!"));
     }
 
     private void register() {
+        long start = System.nanoTime();
         String user = regUsernameField.getText().trim();
-        String pass = new String(regPasswordField.getPassword());
+        char[] pass = regPasswordField.getPassword();
         String email = regEmailField.getText().trim();
         String sid = regStudentIdField.getText().trim();
 
-        if (user.isEmpty() || pass.isEmpty() || email.isEmpty() || sid.isEmpty()) {
+        if (user.isEmpty() || pass.length == 0 || email.isEmpty() || sid.isEmpty()) {
             JOptionPane.showMessageDialog(this, "Fill all fields!");
             return;
         }
 
-        if (users.containsKey(user)) {
-            JOptionPane.showMessageDialog(this, "User already exists!");
-            return;
-        }
-
-        User u = new User(user, pass, email, sid);
-        users.put(user, u);
-        saveUsers();
-
-        JOptionPane.showMessageDialog(this, "Registered!");
+        verifier.run(() -> requireService().register(user, pass, email, sid), pass, registered -> traced("register", () -> {
+            REGISTER_TIME.record(System.nanoTime() - start);
+            if (!registered) {
+                JOptionPane.showMessageDialog(this, "User already exists!");
+                return;
+            }
+            JOptionPane.showMessageDialog(this, "Registered!");
 
-        regUsernameField.setText("");
-        regPasswordField.setText("");
-        regEmailField.setText("");
-        regStudentIdField.setText("");
+            regUsernameField.setText("");
+            regPasswordField.setText("");
+            regEmailField.setText("");
+            regStudentIdField.setText("");
 
-        cardLayout.show(mainPanel, "LOGIN");
+            screens.show("LOGIN");
+        }), e -> JOptionPane.showMessageDialog(this, "Cannot save user data!"));
     }
 
     private void logout() {
-        if (currentUser != null) saveUserTodos();
+        if (todoTransfer != null) todoTransfer.cancel(false);
+        if (session != null) endSession();
 
-        currentUser = null;
-        if (todoModel != null) todoModel.setRowCount(0);
+        session = null;
+        todosLoaded = false;
+        todoModel.clear();
 
         loginUsernameField.setText("");
         loginPasswordField.setText("");
 
-        cardLayout.show(mainPanel, "LOGIN");
+        screens.show("LOGIN");
     }
 
     private void addTodo() {
         String t = todoTextField.getText().trim();
-        if (t.isEmpty()) return;
+        if (t.isEmpty() || !todosLoaded) return;
 
-        todoModel.addRow(new Object[]{t, "Pending"});
+        long created = System.currentTimeMillis();
+        todoModel.add(new Todo(t, TodoStatus.PENDING.label, created, 0));
+        AccountService.Session s = session;
+        persistence.run(() -> requireService().add(s, t, created), this::editFailed);
         todoTextField.setText("");
-        updateStatistics();
     }
 
-    private void updateProfilePanel() {
-        if (currentUser == null) return;
-        profileUsernameLabel.setText(currentUser.username);
-        profileEmailLabel.setText(currentUser.email);
-        profileStudentIdLabel.setText(currentUser.studentId);
+    // Streams a CSV/JSONL file into the list on a worker thread. Rows reach the table
+    // in IMPORT_BATCH chunks, each one table event and one shard record. At most
+    // IMPORT_IN_FLIGHT chunks are held at once, however big the file is.
+    private void importTodos() {
+        if (!todosLoaded || todoTransfer != null) return;
+        JFileChooser chooser = createTodoFileChooser();
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) return;
+
+        Path file = chooser.getSelectedFile().toPath();
+        AccountService.Session s = session;
+        int[] imported = {0};
+        Semaphore inFlight = new Semaphore(IMPORT_IN_FLIGHT);
+
+        SwingWorker<Integer, Void> worker = new SwingWorker<Integer, Void>() {
+            @Override
+            protected Integer doInBackground() throws IOException {
+                long size = Math.max(1, Files.size(file));
+                return TodoTransfer.read(file, IMPORT_BATCH, (batch, bytesRead) -> {
+                    try {
+                        while (!inFlight.tryAcquire(100, TimeUnit.MILLISECONDS)) {
+                            if (isCancelled()) return false;
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return false;
+                    }
+                    if (isCancelled()) {
+                        inFlight.release();
+                        return false;
+                    }
+                    // the service gets its own copies, so the EDT can edit the table rows
+                    // while the persistence thread is still storing them
+                    List<Todo> copies = new ArrayList<>(batch.size());
+                    for (Todo t : batch) copies.add(t.copy());
+                    // invokeLater (not publish) so every batch is applied before done() runs
+                    SwingUtilities.invokeLater(() -> addImported(s, batch, copies, this, imported, inFlight));
+                    setProgress((int) Math.min(100, bytesRead * 100 / size));
+                    return true;
+                });
+            }
+
+            @Override
+            protected void done() {
+                if (isCancelled()) return;
+                try {
+                    get();
+                    JOptionPane.showMessageDialog(StudentHelperApp.this, "Imported " + imported[0] + " tasks.");
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    JOptionPane.showMessageDialog(StudentHelperApp.this, "Cannot import file!\n" + rootMessage(e));
+                }
+            }
+        };
+        startTransfer("Importing " + file.getFileName(), worker);
     }
 
-    private void openURL(String url) {
-        try {
-            Desktop.getDesktop().browse(new URI(url));
-        } catch (Exception e) {
-            JOptionPane.showMessageDialog(this, "Cannot open link!");
+    private void addImported(AccountService.Session s, List<Todo> batch, List<Todo> copies,
+                             SwingWorker<?, ?> worker, int[] imported, Semaphore inFlight) {
+        if (session != s || worker.isCancelled()) {
+            inFlight.release();
+            return;
         }
+        todoModel.addAll(batch);
+        imported[0] += batch.size();
+        // later edits queue behind it; the chunk counts as in flight until it is stored
+        persistence.run(() -> {
+            try {
+                requireService().addAll(s, copies);
+            } finally {
+                inFlight.release();
+            }
+        }, this::editFailed);
     }
 
-    private void loadUserTodos() {
-        todoModel.setRowCount(0);
-        if (currentUser != null && currentUser.todos != null) {
-            for (Todo t : currentUser.todos) {
-                todoModel.addRow(new Object[]{t.task, t.status});
+    // Writes a snapshot of the list; the worker never looks at the live model
+    private void exportTodos() {
+        if (!todosLoaded || todoTransfer != null) return;
+        JFileChooser chooser = createTodoFileChooser();
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) return;
+
+        Path chosen = chooser.getSelectedFile().toPath();
+        Path file = chosen.getFileName().toString().contains(".")
+                ? chosen : chosen.resolveSibling(chosen.getFileName() + ".csv");
+
+        List<Todo> todos = todoModel.getTodos();
+        List<Todo> snapshot = new ArrayList<>(todos.size());
+        for (Todo t : todos) snapshot.add(t.copy());
+
+        SwingWorker<Boolean, Void> worker = new SwingWorker<Boolean, Void>() {
+            @Override
+            protected Boolean doInBackground() throws IOException {
+                boolean finished = TodoTransfer.write(file, snapshot, rows -> {
+                    setProgress((int) (rows * 100L / snapshot.size()));
+                    return !isCancelled();
+                });
+                if (!finished) Files.deleteIfExists(file);
+                return finished;
             }
-        }
-    }
 
-    private void saveUserTodos() {
-        if (currentUser == null) return;
+            @Override
+            protected void done() {
+                if (isCancelled()) return;
+                try {
+                    get();
+                    JOptionPane.showMessageDialog(StudentHelperApp.this,
+                            "Exported " + snapshot.size() + " tasks to " + file.getFileName() + ".");
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    JOptionPane.showMessageDialog(StudentHelperApp.this, "Cannot export file!\n" + rootMessage(e));
+                }
+            }
+        };
+        startTransfer("Exporting " + file.getFileName(), worker);
+    }
 
-        currentUser.todos = new ArrayList<>();
-        for (int i = 0; i < todoModel.getRowCount(); i++) {
-            String t = (String) todoModel.getValueAt(i, 0);
-            String s = (String) todoModel.getValueAt(i, 1);
-            currentUser.todos.add(new Todo(t, s));
-        }
-        saveUsers();
+    private JFileChooser createTodoFileChooser() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setFileFilter(new FileNameExtensionFilter("Tasks (CSV, JSON Lines)", "csv", "jsonl", "json"));
+        return chooser;
     }
 
-    private void updateStatistics() {
-        if (statsPanel == null || todoModel == null) return;
+    // Non-modal progress window; Cancel (or closing it) stops the worker at the next batch
+    private void startTransfer(String title, SwingWorker<?, ?> worker) {
+        JDialog dialog = new JDialog(this, title, false);
+        dialog.setDefaultCloseOperation(WindowConstants.DO_NOTHING_ON_CLOSE);
+        dialog.addWindowListener(new WindowAdapter() {
+            @Override public void windowClosing(WindowEvent e) { worker.cancel(false); }
+        });
 
-        int pending = 0, completed = 0;
-        for (int i = 0; i < todoModel.getRowCount(); i++) {
-            String s = (String) todoModel.getValueAt(i, 1);
-            if ("Completed".equals(s)) completed++;
-            else pending++;
-        }
+        JProgressBar bar = new JProgressBar(0, 100);
+        bar.setStringPainted(true);
+        bar.setForeground(GREEN);
+        bar.setPreferredSize(new Dimension(320, 24));
 
-        statsPanel.setData(pending, completed);
-        statsPanel.repaint();
+        JPanel content = new JPanel(new BorderLayout(10, 10));
+        content.setBackground(BG_PANEL);
+        content.setBorder(BorderFactory.createEmptyBorder(15, 15, 15, 15));
+        JPanel btn = new JPanel();
+        btn.setBackground(BG_PANEL);
+        btn.add(createButton("Cancel", null, e -> worker.cancel(false)));
+        content.add(bar, BorderLayout.CENTER);
+        content.add(btn, BorderLayout.SOUTH);
+
+        worker.addPropertyChangeListener(e -> {
+            if ("progress".equals(e.getPropertyName())) {
+                bar.setValue((Integer) e.getNewValue());
+            } else if ("state".equals(e.getPropertyName()) && e.getNewValue() == SwingWorker.StateValue.DONE) {
+                dialog.dispose();
+                if (todoTransfer == worker) todoTransfer = null;
+            }
+        });
+
+        dialog.setContentPane(content);
+        dialog.pack();
+        dialog.setLocationRelativeTo(this);
+        todoTransfer = worker;
+        worker.execute();
+        dialog.setVisible(true);
     }
 
-    // ===== Persistence (file-based, not a database) =====
+    private static String rootMessage(Throwable e) {
+        while (e.getCause() != null) e = e.getCause();
+        return e.getMessage() != null ? e.getMessage() : e.toString();
+    }
 
-    @SuppressWarnings("unchecked")
-    private void loadUsers() {
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(DATA_FILE))) {
-            users = (Map<String, User>) ois.readObject();
-        } catch (Exception e) {
-            users = new HashMap<>();
-        }
+    private void updateProfilePanel() {
+        if (session == null || profileUsernameLabel == null) return;
+        profileUsernameLabel.setText(session.username);
+        profileEmailLabel.setText(session.email);
+        profileStudentIdLabel.setText(session.studentId);
     }
 
-    private void saveUsers() {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(DATA_FILE))) {
-            oos.writeObject(users);
-        } catch (IOException ignored) {
+    private void openURL(String url) {
+        try {
+            Desktop.getDesktop().browse(new URI(url));
+        } catch (Exception e) {
+            JOptionPane.showMessageDialog(this, "Cannot open link!");
         }
     }
 
-    public static void main(String[] args) {
-        SwingUtilities.invokeLater(() -> {
-            try { UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName()); }
-            catch (Exception ignored) {}
-            new StudentHelperApp().setVisible(true);
-        });
+    // The table gets its own copy of the session's list (the login already read the shard)
+    private void loadUserTodos() {
+        todoModel.clear();
+        todosLoaded = false;
+        if (session == null) return;
+
+        AccountService.Session s = session;
+        persistence.submit(() -> requireService().todos(s), todos -> {
+            if (session != s) return;
+            showTodos(s, todos);
+            todosLoaded = true;
+        }, e -> JOptionPane.showMessageDialog(this, "Cannot read user data!"));
     }
-}
 
-class User implements Serializable {
-    private static final long serialVersionUID = 1L;
-
-    String username, password, email, studentId;
-    List<Todo> todos = new ArrayList<>();
-
-    public User(String u, String p, String e, String id) {
-        username = u;
-        password = p;
-        email = e;
-        studentId = id;
+    // Picks up changes made elsewhere (only a sync server has any); skipped while an
+    // import is adding rows
+    private void refreshTodos() {
+        if (session == null || !todosLoaded || todoTransfer != null || refreshQueued) return;
+        AccountService.Session s = session;
+        refreshQueued = true;
+        persistence.submit(() -> requireService().refresh(s), todos -> {
+            refreshQueued = false;
+            if (todos != null && session == s) showTodos(s, todos);
+        }, e -> refreshQueued = false);
     }
-}
 
-class Todo implements Serializable {
-    private static final long serialVersionUID = 1L;
+    // The service is told once the list is on screen, so edits queued after this refer
+    // to its rows
+    private void showTodos(AccountService.Session s, List<Todo> todos) {
+        todoModel.setTodos(todos);
+        persistence.run(() -> requireService().showing(s, todos), this::editFailed);
+    }
 
-    String task, status;
+    private void editFailed(IOException e) {
+        if (e instanceof SyncClient.ConflictException) {
+            JOptionPane.showMessageDialog(this, e.getMessage());
+            refreshTodos();
+        } else {
+            showSaveError();
+        }
+    }
 
-    public Todo(String t, String s) {
-        task = t;
-        status = s;
+    // Queued behind the session's edits: the service rewrites the user's shard (and nobody
+    // else's) as one compact snapshot and ends the session
+    private void endSession() {
+        AccountService.Session s = session;
+        traced("save", () -> persistence.run(() -> {
+            long start = System.nanoTime();
+            requireService().logout(s);
+            SAVE_TIME.record(System.nanoTime() - start);
+        }, e -> showSaveError()));
     }
-}
 
-class TaskStatsPanel extends JPanel {
+    // Counters come from the model, so this is O(1) whatever the list size
+    private void updateStatistics() {
+        if (statsPanel == null || historyPanel == null) return;
 
-    private int pending = 0;
-    private int completed = 0;
+        traced("statistics refresh", () -> {
+            long start = System.nanoTime();
+            statsPanel.setData(todoModel.pendingCount(), todoModel.completedCount());
+            historyPanel.refresh();
+            STATISTICS_TIME.record(System.nanoTime() - start);
+        });
+    }
 
-    public void setData(int p, int c) {
-        pending = p;
-        completed = c;
+    // Called for every table event; a burst of changes ends up as one chart update
+    private void scheduleStatistics() {
+        if (statsUpdateQueued) return;
+        statsUpdateQueued = true;
+        SwingUtilities.invokeLater(() -> {
+            statsUpdateQueued = false;
+            updateStatistics();
+        });
     }
 
-    @Override
-    protected void paintComponent(Graphics g) {
-        super.paintComponent(g);
+    // Refresh button: recounts the rows to check the incremental counters
+    private void refreshStatistics() {
+        traced("statistics refresh", () -> {
+            if (!todoModel.verifyCounts()) {
+                System.err.println("Task statistics were out of sync with the table and have been recounted");
+            }
+            updateStatistics();
+        });
+    }
 
-        int w = getWidth(), h = getHeight();
-        int max = Math.max(1, Math.max(pending, completed));
+    // Runs an EDT action under a name, so a stall report says what the UI was doing
+    private void traced(String action, Runnable r) {
+        String previous = watchdog.begin(action);
+        try {
+            r.run();
+        } finally {
+            watchdog.end(previous);
+        }
+    }
 
-        int barW = w / 6;
-        int gap = barW;
-        int baseY = h - 40;
-        int maxH = h - 100;
+    // ===== Persistence (file-based, not a database) =====
 
-        int x1 = w / 2 - barW - gap / 2;
-        int x2 = w / 2 + gap / 2;
+    // Opens the journal and maps the index in the background - no account is read
+    // until someone logs in. Anything submitted meanwhile simply queues behind it.
+    private void loadUsers() {
+        persistence.submit(() -> {
+            long start = System.nanoTime();
+            try {
+                if (SERVER != null) {
+                    service.complete(SyncClient.of(SERVER)); // connects on first use
+                } else {
+                    UserStore store = UserStore.open(Paths.get(JOURNAL_FILE), Paths.get(INDEX_FILE), Paths.get(DATA_FILE));
+                    service.complete(new UserService(store, shards));
+                }
+            } catch (IOException e) {
+                service.completeExceptionally(e);
+                throw e;
+            }
+            LOAD_USERS_TIME.record(System.nanoTime() - start);
+            StartupTimer.log("load users", start);
+            return null;
+        }, null, e -> JOptionPane.showMessageDialog(this, "Cannot open user data!"));
+    }
 
-        Graphics2D g2 = (Graphics2D) g;
+    // Never called on the EDT: waits for loadUsers if it is still running
+    private AccountService requireService() throws IOException {
+        try {
+            return service.get();
+        } catch (ExecutionException e) {
+            throw new IOException("User data is not available", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while opening user data");
+        }
+    }
 
-        g2.setColor(Color.WHITE);
-        g2.drawLine(40, baseY, w - 40, baseY);
+    private void showSaveError() {
+        JOptionPane.showMessageDialog(this, "Cannot save changes!");
+    }
 
-        int h1 = (int) (maxH * (pending / (double) max));
-        int h2 = (int) (maxH * (completed / (double) max));
+    // Saves whatever sessions are still open and closes the journal
+    private void closeStore() throws IOException {
+        if (service.isDone() && !service.isCompletedExceptionally()) service.join().close();
+    }
 
-        g2.setColor(new Color(200, 200, 0));
-        g2.fillRect(x1, baseY - h1, barW, h1);
-        g2.setColor(Color.WHITE);
-        g2.drawString("Pending: " + pending, x1, baseY + 20);
+    // Everything still queued is written before the JVM goes away
+    private void exitApp() {
+        if (session != null) endSession();
+        persistence.shutdown(this::closeStore, EXIT_FLUSH_TIMEOUT_MS);
+        verifier.shutdown();
+        if (PasswordHasher.latency().count() > 0) {
+            System.err.println("Password hash latency (" + PasswordHasher.ITERATIONS + " iterations): "
+                    + PasswordHasher.latency().summary());
+        }
+        watchdog.stop();
+        System.err.print(watchdog.report());
+        System.exit(0);
+    }
 
-        g2.setColor(new Color(0, 220, 80));
-        g2.fillRect(x2, baseY - h2, barW, h2);
-        g2.setColor(Color.WHITE);
-        g2.drawString("Completed: " + completed, x2, baseY + 20);
+    public static void main(String[] args) {
+        StartupTimer.start();
+        SwingUtilities.invokeLater(() -> {
+            try { UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName()); }
+            catch (Exception ignored) {}
+            new StudentHelperApp().setVisible(true);
+        });
     }
 }
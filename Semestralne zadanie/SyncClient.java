@@ -0,0 +1,246 @@
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+// AccountService backed by a SyncServer, for one session at a time (the desktop app's).
+// The session's list is cached here at the server's (epoch, version) and kept up to date
+// with SYNC requests, which return only the changes since that version while the server
+// still remembers them.
+//
+// Edits refer to rows by index, so they are sent with the version of the list the app is
+// showing and the server refuses them (CONFLICT) if anyone changed the list in between.
+// A list fetched by refresh() only becomes the base for edits once the app has it on
+// screen and says so with showing(); an edit made in the meantime fails instead of
+// touching the wrong row.
+final class SyncClient implements AccountService {
+
+    // An edit that was refused because the list changed elsewhere; refresh() has the new one
+    static final class ConflictException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        ConflictException() {
+            super("The task list was changed on another device and has been reloaded");
+        }
+    }
+
+    private static final int CONNECT_TIMEOUT_MS = 5_000;
+
+    private final String host;
+    private final int port;
+    private Socket socket;
+    private DataInputStream in;
+    private DataOutputStream out;
+
+    // the server's list as last seen, and what the app shows (base for its edits)
+    private List<Todo> cache;
+    private long epoch, version;
+    private long viewEpoch, viewVersion = -1;
+    private List<Todo> offered; // last list handed out by todos()/refresh()
+    private long offeredEpoch, offeredVersion;
+
+    SyncClient(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    // "host" or "host:port"
+    static SyncClient of(String address) {
+        int colon = address.lastIndexOf(':');
+        if (colon < 0) return new SyncClient(address, SyncProtocol.DEFAULT_PORT);
+        return new SyncClient(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+    }
+
+    // ===== Accounts =====
+
+    @Override
+    public synchronized boolean register(String username, char[] password, String email, String studentId)
+            throws IOException {
+        RecordReader r = call(new RecordWriter().writeByte(SyncProtocol.REGISTER).writeString(username)
+                .writeString(new String(password)).writeString(email).writeString(studentId));
+        return r.readByte() == 1;
+    }
+
+    @Override
+    public synchronized Session login(String username, char[] password) throws IOException {
+        RecordReader r = request(new RecordWriter().writeByte(SyncProtocol.LOGIN).writeString(username)
+                .writeString(new String(password)));
+        if (r == null) return null;
+        cache = null;
+        epoch = 0;
+        version = 0;
+        viewVersion = -1;
+        offered = null;
+        return new Session(username, r.readString(), r.readString());
+    }
+
+    @Override
+    public synchronized void logout(Session s) throws IOException {
+        if (!s.open) return;
+        s.open = false;
+        cache = null;
+        call(new RecordWriter().writeByte(SyncProtocol.LOGOUT));
+    }
+
+    // ===== Todos =====
+
+    @Override
+    public synchronized List<Todo> todos(Session s) throws IOException {
+        sync();
+        return offer();
+    }
+
+    @Override
+    public synchronized List<Todo> refresh(Session s) throws IOException {
+        sync();
+        boolean shown = viewEpoch == epoch && viewVersion == version;
+        boolean pending = offered != null && offeredEpoch == epoch && offeredVersion == version;
+        return shown || pending ? null : offer();
+    }
+
+    @Override
+    public synchronized void showing(Session s, List<Todo> list) {
+        if (list != offered) return; // an older offer, a newer one is on its way
+        viewEpoch = offeredEpoch;
+        viewVersion = offeredVersion;
+        offered = null;
+    }
+
+    @Override
+    public synchronized void add(Session s, String task, long created) throws IOException {
+        long v = edit(new RecordWriter().writeByte(SyncProtocol.ADD).writeVarLong(epoch).writeVarLong(version)
+                .writeString(task).writeVarLong(created)).readVarLong();
+        cache.add(new Todo(task, TodoStatus.PENDING.label, created, 0));
+        edited(v);
+    }
+
+    @Override
+    public synchronized void addAll(Session s, List<Todo> batch) throws IOException {
+        RecordWriter w = new RecordWriter().writeByte(SyncProtocol.ADD_ALL).writeVarLong(epoch).writeVarLong(version);
+        SyncProtocol.writeTodos(w, batch);
+        long v = edit(w).readVarLong();
+        for (Todo t : batch) cache.add(t.copy());
+        edited(v);
+    }
+
+    @Override
+    public synchronized boolean complete(Session s, int index, long when) throws IOException {
+        RecordReader r = edit(new RecordWriter().writeByte(SyncProtocol.COMPLETE).writeVarLong(epoch)
+                .writeVarLong(version).writeVarInt(index).writeVarLong(when));
+        long v = r.readVarLong();
+        boolean applied = r.readByte() == 1;
+        if (applied) {
+            Todo t = cache.get(index);
+            t.status = TodoStatus.COMPLETED.label;
+            t.completed = when;
+        }
+        edited(v);
+        return applied;
+    }
+
+    @Override
+    public synchronized boolean delete(Session s, int index) throws IOException {
+        RecordReader r = edit(new RecordWriter().writeByte(SyncProtocol.DELETE).writeVarLong(epoch)
+                .writeVarLong(version).writeVarInt(index));
+        long v = r.readVarLong();
+        boolean applied = r.readByte() == 1;
+        if (applied) cache.remove(index);
+        edited(v);
+        return applied;
+    }
+
+    // Brings the cache up to the server's version
+    private void sync() throws IOException {
+        UserService.Delta d = SyncProtocol.readDelta(call(new RecordWriter().writeByte(SyncProtocol.SYNC)
+                .writeVarLong(cache == null ? 0 : epoch).writeVarLong(version)));
+        if (d.snapshot != null) {
+            cache = d.snapshot;
+        } else {
+            for (UserService.Change c : d.changes) c.applyTo(cache);
+        }
+        epoch = d.epoch;
+        version = d.version;
+    }
+
+    private List<Todo> offer() {
+        List<Todo> copy = new ArrayList<>(cache.size());
+        for (Todo t : cache) copy.add(t.copy());
+        offered = copy;
+        offeredEpoch = epoch;
+        offeredVersion = version;
+        return copy;
+    }
+
+    // Only from the version the app is showing; a refused edit pulls in the new list
+    private RecordReader edit(RecordWriter request) throws IOException {
+        if (cache == null || viewEpoch != epoch || viewVersion != version) throw new ConflictException();
+        RecordReader r = request(request);
+        if (r == null) {
+            sync();
+            throw new ConflictException();
+        }
+        return r;
+    }
+
+    // The app applied the same edit to its list, so it still shows the cache
+    private void edited(long newVersion) {
+        version = newVersion;
+        viewVersion = newVersion;
+    }
+
+    // ===== Connection =====
+
+    // Response after an OK status; DENIED and CONFLICT become exceptions
+    private RecordReader call(RecordWriter request) throws IOException {
+        RecordReader r = request(request);
+        if (r == null) throw new IOException("Not logged in to the sync server (session expired?)");
+        return r;
+    }
+
+    // Response after an OK status, or null for DENIED / CONFLICT
+    private RecordReader request(RecordWriter request) throws IOException {
+        if (socket == null) connect();
+        RecordReader r;
+        try {
+            SyncProtocol.write(out, request);
+            r = SyncProtocol.read(in);
+            if (r == null) throw new EOFException("Sync server closed the connection");
+        } catch (IOException e) {
+            disconnect(); // the next call reconnects; the session is gone with the connection
+            throw e;
+        }
+        byte status = r.readByte();
+        if (status == SyncProtocol.OK) return r;
+        if (status == SyncProtocol.FAILED) throw new IOException("Sync server: " + r.readString());
+        return null;
+    }
+
+    private void connect() throws IOException {
+        Socket s = new Socket();
+        try {
+            s.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MS);
+            s.setTcpNoDelay(true);
+            in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+            out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+        } catch (IOException e) {
+            s.close();
+            throw e;
+        }
+        socket = s;
+    }
+
+    private void disconnect() {
+        try {
+            if (socket != null) socket.close();
+        } catch (IOException ignored) {
+        }
+        socket = null;
+        cache = null;
+    }
+
+    @Override
+    public synchronized void close() {
+        disconnect();
+    }
+}
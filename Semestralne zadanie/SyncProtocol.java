@@ -0,0 +1,118 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+// Frames between SyncClient and SyncServer: a 4-byte length, then a payload in the compact
+// record format (RecordWriter varints and strings). A request starts with its type, a
+// response with its status; the rest of each is listed next to the type below.
+// There is no encryption, so run it on loopback or a trusted network only.
+final class SyncProtocol {
+
+    static final int DEFAULT_PORT = 12346;
+    private static final int MAX_FRAME = 64 << 20;
+
+    // requests                         fields after the type           OK response
+    static final byte REGISTER = 1;  // user, password, email, id      registered (byte)
+    static final byte LOGIN = 2;     // user, password                 email, id
+    static final byte SYNC = 3;      // epoch, version                 delta
+    static final byte ADD = 4;       // epoch, version, task, created  version
+    static final byte ADD_ALL = 5;   // epoch, version, todos          version
+    static final byte COMPLETE = 6;  // epoch, version, index, when    version, applied (byte)
+    static final byte DELETE = 7;    // epoch, version, index          version, applied (byte)
+    static final byte LOGOUT = 8;    // -                              -
+
+    // responses
+    static final byte OK = 0;
+    static final byte DENIED = 1;    // wrong password, or not logged in
+    static final byte CONFLICT = 2;  // the list is no longer at the (epoch, version) sent
+    static final byte FAILED = 3;    // message
+
+    private SyncProtocol() {
+    }
+
+    static void write(DataOutputStream out, RecordWriter payload) throws IOException {
+        out.writeInt(payload.size());
+        out.write(payload.toByteArray());
+        out.flush();
+    }
+
+    // Null at a clean end of stream
+    static RecordReader read(DataInputStream in) throws IOException {
+        int len;
+        try {
+            len = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        if (len <= 0 || len > MAX_FRAME) throw new IOException("Bad frame length " + len);
+        byte[] payload = new byte[len];
+        in.readFully(payload);
+        return RecordReader.of(payload, 0, len);
+    }
+
+    // ===== Todos and deltas =====
+
+    static void writeTodos(RecordWriter out, List<Todo> todos) {
+        out.writeVarInt(todos.size());
+        for (Todo t : todos) {
+            out.writeString(t.task).writeStatus(t.status).writeVarLong(t.created).writeVarLong(t.completed);
+        }
+    }
+
+    static List<Todo> readTodos(RecordReader in) throws IOException {
+        int n = in.readVarInt();
+        List<Todo> todos = new ArrayList<>(Math.min(n, 1 << 16));
+        for (int i = 0; i < n; i++) {
+            todos.add(new Todo(in.readString(), in.readStatus(), in.readVarLong(), in.readVarLong()));
+        }
+        return todos;
+    }
+
+    // epoch, version, then 1 + the full list, or 0 + the changes since the client's version
+    static void writeDelta(RecordWriter out, UserService.Delta d) {
+        out.writeVarLong(d.epoch).writeVarLong(d.version);
+        if (d.snapshot != null) {
+            out.writeByte(1);
+            writeTodos(out, d.snapshot);
+            return;
+        }
+        out.writeByte(0).writeVarInt(d.changes.size());
+        for (UserService.Change c : d.changes) {
+            out.writeVarLong(c.version).writeByte(c.type);
+            switch (c.type) {
+                case UserService.Change.ADD: writeTodos(out, c.added); break;
+                case UserService.Change.COMPLETE: out.writeVarInt(c.index).writeVarLong(c.when); break;
+                default: out.writeVarInt(c.index); break;
+            }
+        }
+    }
+
+    static UserService.Delta readDelta(RecordReader in) throws IOException {
+        long epoch = in.readVarLong(), version = in.readVarLong();
+        if (in.readByte() == 1) return new UserService.Delta(epoch, version, readTodos(in), null);
+
+        int n = in.readVarInt();
+        List<UserService.Change> changes = new ArrayList<>(Math.min(n, 1 << 16));
+        for (int i = 0; i < n; i++) {
+            long v = in.readVarLong();
+            byte type = in.readByte();
+            switch (type) {
+                case UserService.Change.ADD:
+                    changes.add(new UserService.Change(v, type, 0, 0, readTodos(in)));
+                    break;
+                case UserService.Change.COMPLETE:
+                    changes.add(new UserService.Change(v, type, in.readVarInt(), in.readVarLong(), null));
+                    break;
+                case UserService.Change.DELETE:
+                    changes.add(new UserService.Change(v, type, in.readVarInt(), 0, null));
+                    break;
+                default:
+                    throw new IOException("Unknown change type " + type);
+            }
+        }
+        return new UserService.Delta(epoch, version, null, changes);
+    }
+}
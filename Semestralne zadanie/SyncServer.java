@@ -0,0 +1,171 @@
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Serves accounts and todo lists from one set of data files to any number of SyncClients,
+// so a single process can hold the state for a whole faculty:
+//
+//   java -cp out SyncServer [port] [data directory]
+//
+// The data directory holds the same files the desktop app uses (default: the current
+// one). Blocking I/O with a thread per connection, like cv9's SimpleServer; all shared
+// state is in the thread-safe UserService. A connection is at most one session, ended
+// when the client logs out or disconnects.
+public final class SyncServer implements Closeable {
+
+    private final UserService service;
+    private final ServerSocket serverSocket;
+    private final ExecutorService clients = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "sync-client");
+        t.setDaemon(true);
+        return t;
+    });
+
+    SyncServer(UserService service, int port) throws IOException {
+        this.service = service;
+        this.serverSocket = new ServerSocket(port);
+    }
+
+    int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    // Accepts until close()
+    void serve() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                clients.execute(() -> handle(socket));
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) e.printStackTrace();
+            }
+        }
+    }
+
+    private void handle(Socket socket) {
+        AccountService.Session session = null;
+        try (Socket s = socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()))) {
+            s.setTcpNoDelay(true);
+            RecordReader request;
+            while ((request = SyncProtocol.read(in)) != null) {
+                RecordWriter response = new RecordWriter();
+                byte type = request.readByte();
+                try {
+                    if (type == SyncProtocol.LOGIN) {
+                        if (session != null) service.logout(session);
+                        session = service.login(request.readString(), request.readString().toCharArray());
+                        if (session == null) response.writeByte(SyncProtocol.DENIED);
+                        else response.writeByte(SyncProtocol.OK).writeString(session.email).writeString(session.studentId);
+                    } else if (type == SyncProtocol.REGISTER) {
+                        boolean registered = service.register(request.readString(), request.readString().toCharArray(),
+                                request.readString(), request.readString());
+                        response.writeByte(SyncProtocol.OK).writeByte(registered ? 1 : 0);
+                    } else if (session == null || !session.isOpen()) {
+                        response.writeByte(SyncProtocol.DENIED);
+                    } else if (type == SyncProtocol.LOGOUT) {
+                        service.logout(session);
+                        session = null;
+                        response.writeByte(SyncProtocol.OK);
+                    } else {
+                        answer(session, type, request, response);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    e.printStackTrace();
+                    response = new RecordWriter().writeByte(SyncProtocol.FAILED).writeString(String.valueOf(e.getMessage()));
+                }
+                SyncProtocol.write(out, response);
+            }
+        } catch (IOException e) {
+            // client went away mid-frame
+        } finally {
+            if (session != null) {
+                try {
+                    service.logout(session);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    // Requests on the session's list; edits carry the (epoch, version) their row indexes
+    // refer to and are refused with CONFLICT once the list has moved on
+    private void answer(AccountService.Session s, byte type, RecordReader in, RecordWriter out) throws IOException {
+        if (type == SyncProtocol.SYNC) {
+            UserService.Delta d = service.since(s, in.readVarLong(), in.readVarLong());
+            SyncProtocol.writeDelta(out.writeByte(SyncProtocol.OK), d);
+            return;
+        }
+
+        long epoch = in.readVarLong(), version = in.readVarLong();
+        boolean[] applied = {true};
+        long now;
+        switch (type) {
+            case SyncProtocol.ADD: {
+                String task = in.readString();
+                long created = in.readVarLong();
+                now = service.ifVersion(s, epoch, version, () -> service.add(s, task, created));
+                break;
+            }
+            case SyncProtocol.ADD_ALL: {
+                List<Todo> batch = SyncProtocol.readTodos(in);
+                now = service.ifVersion(s, epoch, version, () -> service.addAll(s, batch));
+                break;
+            }
+            case SyncProtocol.COMPLETE: {
+                int index = in.readVarInt();
+                long when = in.readVarLong();
+                now = service.ifVersion(s, epoch, version, () -> applied[0] = service.complete(s, index, when));
+                break;
+            }
+            case SyncProtocol.DELETE: {
+                int index = in.readVarInt();
+                now = service.ifVersion(s, epoch, version, () -> applied[0] = service.delete(s, index));
+                break;
+            }
+            default:
+                throw new IOException("Unknown request type " + type);
+        }
+
+        if (now < 0) {
+            out.writeByte(SyncProtocol.CONFLICT);
+            return;
+        }
+        out.writeByte(SyncProtocol.OK).writeVarLong(now);
+        if (type == SyncProtocol.COMPLETE || type == SyncProtocol.DELETE) out.writeByte(applied[0] ? 1 : 0);
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        clients.shutdownNow();
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : SyncProtocol.DEFAULT_PORT;
+        Path dir = Paths.get(args.length > 1 ? args[1] : ".");
+
+        UserStore store = UserStore.open(dir.resolve(StudentHelperApp.JOURNAL_FILE),
+                dir.resolve(StudentHelperApp.INDEX_FILE), dir.resolve(StudentHelperApp.DATA_FILE));
+        UserService service = new UserService(store, new TodoShards(dir.resolve(StudentHelperApp.TODOS_DIR)));
+        SyncServer server = new SyncServer(service, port);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.close();
+                service.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }));
+
+        System.out.println("Sync server is listening on port " + server.port());
+        server.serve();
+    }
+}
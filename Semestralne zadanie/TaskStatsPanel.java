@@ -0,0 +1,142 @@
+import javax.swing.JPanel;
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+
+// Pending/completed bar chart. The chart is drawn once into a back buffer and every
+// paint just copies it; the buffer is redrawn only after setData, a size change or an
+// animation frame. A change of values slides the bars over ANIMATION_NANOS on the shared
+// AnimationTimer instead of jumping.
+class TaskStatsPanel extends JPanel implements AnimationTimer.Animated {
+
+    private static final Color AXIS = Color.WHITE;
+    private static final Color PENDING = new Color(200, 200, 0);
+    private static final Color COMPLETED = new Color(0, 220, 80);
+    private static final long ANIMATION_NANOS = 300_000_000L;
+
+    private int pending = 0;
+    private int completed = 0;
+
+    // bar heights as drawn (in task counts); they move from *From to the values above
+    private double shownPending, shownCompleted;
+    private double pendingFrom, completedFrom;
+    private long animationStart;
+    private boolean animating;
+
+    private BufferedImage buffer;
+    private boolean dirty = true;
+
+    public void setData(int p, int c) {
+        if (p == pending && c == completed) return;
+        pending = p;
+        completed = c;
+
+        if (isShowing()) {
+            pendingFrom = shownPending;
+            completedFrom = shownCompleted;
+            animationStart = System.nanoTime();
+            animating = true;
+            AnimationTimer.start(this);
+        } else {
+            // nobody is looking: no animation, the next paint shows the new values
+            finishAnimation();
+        }
+        dirty = true;
+        repaint();
+    }
+
+    @Override
+    public boolean tick(long now) {
+        double t = Math.min(1, (now - animationStart) / (double) ANIMATION_NANOS);
+        double eased = 1 - Math.pow(1 - t, 3);
+        shownPending = pendingFrom + (pending - pendingFrom) * eased;
+        shownCompleted = completedFrom + (completed - completedFrom) * eased;
+        if (t >= 1) animating = false;
+
+        dirty = true;
+        repaint();
+        return animating;
+    }
+
+    private void finishAnimation() {
+        if (animating) AnimationTimer.stop(this);
+        animating = false;
+        shownPending = pending;
+        shownCompleted = completed;
+    }
+
+    @Override
+    public void removeNotify() {
+        finishAnimation();
+        super.removeNotify();
+    }
+
+    @Override
+    public void setBackground(Color bg) {
+        super.setBackground(bg);
+        dirty = true;
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        int w = getWidth(), h = getHeight();
+        if (w <= 0 || h <= 0) return;
+
+        // buffer in device pixels so HiDPI scaling does not blur the copy
+        AffineTransform tx = ((Graphics2D) g).getTransform();
+        int bw = (int) Math.ceil(w * tx.getScaleX());
+        int bh = (int) Math.ceil(h * tx.getScaleY());
+        if (buffer == null || buffer.getWidth() != bw || buffer.getHeight() != bh) {
+            GraphicsConfiguration gc = getGraphicsConfiguration();
+            buffer = gc != null ? gc.createCompatibleImage(bw, bh)
+                    : new BufferedImage(bw, bh, BufferedImage.TYPE_INT_RGB);
+            dirty = true;
+        }
+
+        if (dirty) {
+            Graphics2D b = buffer.createGraphics();
+            try {
+                b.setRenderingHints(((Graphics2D) g).getRenderingHints());
+                b.setFont(getFont());
+                b.scale(bw / (double) w, bh / (double) h);
+                render(b, w, h);
+            } finally {
+                b.dispose();
+            }
+            dirty = false;
+        }
+        if (bw == w && bh == h) g.drawImage(buffer, 0, 0, null);
+        else g.drawImage(buffer, 0, 0, w, h, null);
+    }
+
+    private void render(Graphics2D g2, int w, int h) {
+        g2.setColor(getBackground());
+        g2.fillRect(0, 0, w, h);
+
+        double max = Math.max(1, Math.max(Math.max(pending, completed), Math.max(shownPending, shownCompleted)));
+
+        int barW = w / 6;
+        int gap = barW;
+        int baseY = h - 40;
+        int maxH = h - 100;
+
+        int x1 = w / 2 - barW - gap / 2;
+        int x2 = w / 2 + gap / 2;
+
+        g2.setColor(AXIS);
+        g2.drawLine(40, baseY, w - 40, baseY);
+
+        int h1 = (int) (maxH * (shownPending / max));
+        int h2 = (int) (maxH * (shownCompleted / max));
+
+        g2.setColor(PENDING);
+        g2.fillRect(x1, baseY - h1, barW, h1);
+        g2.setColor(AXIS);
+        g2.drawString("Pending: " + pending, x1, baseY + 20);
+
+        g2.setColor(COMPLETED);
+        g2.fillRect(x2, baseY - h2, barW, h2);
+        g2.setColor(AXIS);
+        g2.drawString("Completed: " + completed, x2, baseY + 20);
+    }
+}
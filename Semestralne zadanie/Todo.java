@@ -0,0 +1,24 @@
+import java.io.Serializable;
+
+class Todo implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    String task, status;
+    // epoch millis; 0 = not known (tasks from before timestamps were kept) / not completed
+    long created, completed;
+
+    public Todo(String t, String s) {
+        task = t;
+        status = s;
+    }
+
+    public Todo(String t, String s, long created, long completed) {
+        this(t, s);
+        this.created = created;
+        this.completed = completed;
+    }
+
+    Todo copy() {
+        return new Todo(task, status, created, completed);
+    }
+}
@@ -0,0 +1,82 @@
+import java.util.*;
+import java.util.function.Predicate;
+
+// Inverted index over the words of Todo.task, kept up to date as todos are added and
+// removed. A query is answered from the index (prefix match per word, all words must
+// match), so typing into the search field never re-reads the task texts.
+class TodoSearchIndex {
+
+    // word -> todos containing it; sorted so a prefix is one subMap
+    private final TreeMap<String, Set<Todo>> words = new TreeMap<>();
+    private int modCount;
+
+    void add(Todo t) {
+        for (String w : tokens(t.task)) {
+            words.computeIfAbsent(w, k -> Collections.newSetFromMap(new IdentityHashMap<>())).add(t);
+        }
+        modCount++;
+    }
+
+    void remove(Todo t) {
+        for (String w : tokens(t.task)) {
+            Set<Todo> set = words.get(w);
+            if (set != null && set.remove(t) && set.isEmpty()) words.remove(w);
+        }
+        modCount++;
+    }
+
+    void rebuild(List<Todo> todos) {
+        words.clear();
+        for (Todo t : todos) add(t);
+        modCount++;
+    }
+
+    // Todos whose task has a word starting with each word of the query
+    Set<Todo> search(String query) {
+        List<String> terms = tokens(query);
+        Set<Todo> result = null;
+        for (String term : terms) {
+            Set<Todo> hits = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (Set<Todo> set : words.subMap(term, true, term + Character.MAX_VALUE, false).values()) {
+                if (result == null) hits.addAll(set);
+                else for (Todo t : set) if (result.contains(t)) hits.add(t);
+            }
+            result = hits;
+            if (result.isEmpty()) break;
+        }
+        return result == null ? Collections.emptySet() : result;
+    }
+
+    // Predicate for a RowFilter; the match set is recomputed only after the index changed.
+    // A query without any word (only spaces or punctuation) filters nothing out.
+    Predicate<Todo> matcher(String query) {
+        if (tokens(query).isEmpty()) return t -> true;
+        return new Predicate<Todo>() {
+            private int seen = -1;
+            private Set<Todo> matches;
+
+            @Override
+            public boolean test(Todo t) {
+                if (seen != modCount) {
+                    matches = search(query);
+                    seen = modCount;
+                }
+                return matches.contains(t);
+            }
+        };
+    }
+
+    static List<String> tokens(String text) {
+        List<String> out = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) start = i;
+            else if (!wordChar && start >= 0) {
+                out.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return out;
+    }
+}
@@ -0,0 +1,269 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+// Todo lists stored one file per user under hashed subdirectories (todos/3f/3f9a...todos),
+// so an account's tasks are read only when that user logs in and writing them never
+// touches anyone else's. A shard is a snapshot followed by small change records; saving
+// the list rewrites it as a fresh snapshot.
+class TodoShards {
+
+    private static final int MAGIC = 0x54554B54; // "TUKT"
+    // 1 = DataOutputStream records, 2 = compact RecordWriter records,
+    // 3 = version 2 plus created/completed timestamps
+    private static final int VERSION = 3;
+
+    private static final byte SNAPSHOT = 1;
+    private static final byte ADD = 2;
+    private static final byte COMPLETE = 3;
+    private static final byte DELETE = 4;
+    private static final byte ADD_ALL = 5;
+
+    private final Path root;
+
+    TodoShards(Path root) {
+        this.root = root;
+    }
+
+    // Null when the user has no shard yet (todos may still be in the journal)
+    List<Todo> load(String username) throws IOException {
+        Path file = shardFile(username);
+        if (!Files.exists(file)) return null;
+
+        byte[] data = Files.readAllBytes(file);
+        Header header = readHeader(new DataInputStream(new ByteArrayInputStream(data)));
+        List<Todo> todos = new ArrayList<>();
+        CRC32 crc = new CRC32();
+        int pos = header.size;
+
+        while (pos + 8 <= data.length) {
+            ByteBuffer frame = ByteBuffer.wrap(data, pos, 8);
+            int len = frame.getInt();
+            int sum = frame.getInt();
+            if (len <= 0 || len > data.length - pos - 8) break;
+            crc.reset();
+            crc.update(data, pos + 8, len);
+            if ((int) crc.getValue() != sum) break;
+
+            apply(todos, header.version, header.version == 1
+                    ? RecordReader.legacy(data, pos + 8, len)
+                    : RecordReader.of(data, pos + 8, len));
+            pos += 8 + len;
+        }
+
+        // a torn change record from a crash would hide everything appended after it
+        if (pos < data.length) {
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                ch.truncate(pos);
+            }
+        }
+        return todos;
+    }
+
+    private static void apply(List<Todo> todos, int version, RecordReader in) throws IOException {
+        boolean timestamps = version >= 3;
+        byte type = in.readByte();
+        switch (type) {
+            case SNAPSHOT: {
+                todos.clear();
+                int n = in.readVarInt();
+                for (int i = 0; i < n; i++) todos.add(readTodo(in, timestamps));
+                break;
+            }
+            case ADD: {
+                Todo t = new Todo(in.readString(), TodoStatus.PENDING.label);
+                if (timestamps) t.created = in.readVarLong();
+                todos.add(t);
+                break;
+            }
+            case ADD_ALL: {
+                int n = in.readVarInt();
+                for (int i = 0; i < n; i++) todos.add(readTodo(in, timestamps));
+                break;
+            }
+            case COMPLETE: {
+                int i = in.readVarInt();
+                long when = timestamps ? in.readVarLong() : 0;
+                if (i >= 0 && i < todos.size()) {
+                    todos.get(i).status = TodoStatus.COMPLETED.label;
+                    todos.get(i).completed = when;
+                }
+                break;
+            }
+            case DELETE: {
+                int i = in.readVarInt();
+                if (i >= 0 && i < todos.size()) todos.remove(i);
+                break;
+            }
+            default:
+                break;
+        }
+    }
+
+    // task, status, then (version 3) created and completed millis
+    private static Todo readTodo(RecordReader in, boolean timestamps) throws IOException {
+        Todo t = new Todo(in.readString(), in.readStatus());
+        if (timestamps) {
+            t.created = in.readVarLong();
+            t.completed = in.readVarLong();
+        }
+        return t;
+    }
+
+    private static void writeTodo(RecordWriter out, Todo t) {
+        out.writeString(t.task).writeStatus(t.status).writeVarLong(t.created).writeVarLong(t.completed);
+    }
+
+    // ===== Changes =====
+
+    private interface Body {
+        void write(RecordWriter out);
+    }
+
+    void add(String username, String task, long created) throws IOException {
+        append(username, ADD, out -> out.writeString(task).writeVarLong(created));
+    }
+
+    // A whole import batch as one record (one write + force)
+    void addAll(String username, List<Todo> batch) throws IOException {
+        append(username, ADD_ALL, out -> {
+            out.writeVarInt(batch.size());
+            for (Todo t : batch) writeTodo(out, t);
+        });
+    }
+
+    void complete(String username, int index, long when) throws IOException {
+        append(username, COMPLETE, out -> out.writeVarInt(index).writeVarLong(when));
+    }
+
+    void delete(String username, int index) throws IOException {
+        append(username, DELETE, out -> out.writeVarInt(index));
+    }
+
+    private void append(String username, byte type, Body body) throws IOException {
+        Path file = shardFile(username);
+        if (!Files.exists(file)) {
+            save(username, new ArrayList<>());
+        } else if (header(file).version != VERSION) {
+            save(username, load(username)); // old-format shard: rewrite before mixing records
+        }
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer record = record(type, body);
+            while (record.hasRemaining()) ch.write(record);
+            ch.force(false);
+        }
+    }
+
+    // Rewrites the user's shard as a single snapshot (temp file + rename)
+    void save(String username, List<Todo> todos) throws IOException {
+        Path file = shardFile(username);
+        Files.createDirectories(file.getParent());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            RecordWriter header = new RecordWriter().writeString(username);
+            ByteBuffer[] parts = {
+                    ByteBuffer.allocate(8).putInt(MAGIC).putInt(VERSION).flip(),
+                    ByteBuffer.wrap(header.toByteArray()),
+                    record(SNAPSHOT, out -> {
+                        out.writeVarInt(todos.size());
+                        for (Todo t : todos) writeTodo(out, t);
+                    })
+            };
+            long remaining = 0;
+            for (ByteBuffer b : parts) remaining += b.remaining();
+            while (remaining > 0) remaining -= ch.write(parts);
+            ch.force(true);
+        }
+        try {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static ByteBuffer record(byte type, Body body) {
+        RecordWriter out = new RecordWriter();
+        out.writeByte(type);
+        body.write(out);
+        byte[] payload = out.toByteArray();
+
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        ByteBuffer record = ByteBuffer.allocate(8 + payload.length);
+        record.putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+        record.flip();
+        return record;
+    }
+
+    // ===== Layout =====
+
+    // todos/<first byte of hash>/<hash>.todos; the username inside the file settles
+    // the (very unlikely) case of two names with the same hash
+    private Path shardFile(String username) throws IOException {
+        String hash = String.format("%016x", UserIndex.hash(username));
+        Path dir = root.resolve(hash.substring(0, 2));
+        for (int i = 0; ; i++) {
+            Path file = dir.resolve(hash + (i == 0 ? "" : "-" + i) + ".todos");
+            if (!Files.exists(file) || username.equals(header(file).username)) return file;
+        }
+    }
+
+    private static final class Header {
+        final int version;
+        final String username;
+        final int size;
+
+        Header(int version, String username, int size) {
+            this.version = version;
+            this.username = username;
+            this.size = size;
+        }
+    }
+
+    private static Header header(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 512))) {
+            return readHeader(in);
+        }
+    }
+
+    // magic, version, then the username (writeUTF in version 1, varint length + UTF-8 after)
+    private static Header readHeader(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) throw new IOException("Not a todo shard");
+        int version = in.readInt();
+        if (version == 1) {
+            String username = in.readUTF();
+            return new Header(version, username, 8 + 2 + utfLength(username));
+        }
+        if (version != 2 && version != VERSION) throw new IOException("Unsupported todo shard version " + version);
+
+        int tag = 0, shift = 0, tagBytes = 0;
+        int b;
+        do {
+            b = in.readUnsignedByte();
+            tag |= (b & 0x7F) << shift;
+            shift += 7;
+            tagBytes++;
+        } while ((b & 0x80) != 0 && shift < 35);
+        byte[] utf8 = new byte[tag >>> 1];
+        in.readFully(utf8);
+        return new Header(version, new String(utf8, StandardCharsets.UTF_8),
+                8 + tagBytes + utf8.length);
+    }
+
+    // Bytes writeUTF used for the string (modified UTF-8)
+    private static int utfLength(String s) {
+        int n = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            n += (c >= 0x0001 && c <= 0x007F) ? 1 : (c > 0x07FF ? 3 : 2);
+        }
+        return n;
+    }
+}
@@ -0,0 +1,26 @@
+// Todo state as stored on disk: one byte instead of the "Pending"/"Completed" string
+enum TodoStatus {
+    PENDING("Pending"),
+    COMPLETED("Completed");
+
+    final String label;
+
+    TodoStatus(String label) {
+        this.label = label;
+    }
+
+    byte code() {
+        return (byte) ordinal();
+    }
+
+    static TodoStatus of(String label) {
+        return COMPLETED.label.equals(label) ? COMPLETED : PENDING;
+    }
+
+    static TodoStatus fromCode(int code) throws java.io.IOException {
+        if (code < 0 || code >= VALUES.length) throw new java.io.IOException("Bad todo status " + code);
+        return VALUES[code];
+    }
+
+    private static final TodoStatus[] VALUES = values();
+}
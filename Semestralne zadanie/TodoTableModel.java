@@ -0,0 +1,152 @@
+import javax.swing.table.AbstractTableModel;
+import java.util.ArrayList;
+import java.util.List;
+
+// Table model that reads straight from the user's Todo list (no per-row Vector copies).
+// Status cells are the shared TodoStatus labels, so a row costs one Todo and nothing more,
+// and every change fires an event for just the rows it touched. The completed count is
+// kept up to date with every change, so statistics never have to walk the rows; the same
+// goes for the completion history behind the throughput chart.
+class TodoTableModel extends AbstractTableModel {
+
+    private static final long serialVersionUID = 1L;
+
+    static final int TASK_COLUMN = 0;
+    static final int STATUS_COLUMN = 1;
+    private static final String[] COLUMNS = {"Task", "Status"};
+
+    private List<Todo> todos = new ArrayList<>();
+    private int completed;
+    private final TodoSearchIndex searchIndex = new TodoSearchIndex();
+    private final CompletionHistory history = new CompletionHistory();
+
+    // The model works on this list directly; later changes through the model show up in it
+    void setTodos(List<Todo> todos) {
+        this.todos = todos;
+        completed = countCompleted();
+        searchIndex.rebuild(todos);
+        history.rebuild(todos);
+        fireTableDataChanged();
+    }
+
+    List<Todo> getTodos() {
+        return todos;
+    }
+
+    Todo getTodo(int row) {
+        return todos.get(row);
+    }
+
+    void add(Todo t) {
+        todos.add(t);
+        if (isCompleted(t)) {
+            completed++;
+            history.add(t.completed);
+        }
+        searchIndex.add(t);
+        int row = todos.size() - 1;
+        fireTableRowsInserted(row, row);
+    }
+
+    // Bulk insert (import): one event for the whole batch instead of one per row
+    void addAll(List<Todo> batch) {
+        if (batch.isEmpty()) return;
+        int first = todos.size();
+        todos.addAll(batch);
+        for (Todo t : batch) {
+            if (isCompleted(t)) {
+                completed++;
+                history.add(t.completed);
+            }
+            searchIndex.add(t);
+        }
+        fireTableRowsInserted(first, todos.size() - 1);
+    }
+
+    // False if the row was already completed; stamps the completion time
+    boolean complete(int row) {
+        Todo t = todos.get(row);
+        if (isCompleted(t)) return false;
+        t.status = TodoStatus.COMPLETED.label;
+        t.completed = System.currentTimeMillis();
+        completed++;
+        history.add(t.completed);
+        fireTableRowsUpdated(row, row);
+        return true;
+    }
+
+    // A deleted task leaves the completion history as well (see CompletionHistory)
+    void remove(int row) {
+        Todo t = todos.remove(row);
+        if (isCompleted(t)) {
+            completed--;
+            history.remove(t.completed);
+        }
+        searchIndex.remove(t);
+        fireTableRowsDeleted(row, row);
+    }
+
+    void clear() {
+        setTodos(new ArrayList<>());
+    }
+
+    TodoSearchIndex searchIndex() {
+        return searchIndex;
+    }
+
+    CompletionHistory history() {
+        return history;
+    }
+
+    int completedCount() {
+        return completed;
+    }
+
+    int pendingCount() {
+        return todos.size() - completed;
+    }
+
+    // Full recount; returns false (and fixes the counter) if it had drifted from the rows
+    boolean verifyCounts() {
+        int actual = countCompleted();
+        if (actual == completed) return true;
+        completed = actual;
+        return false;
+    }
+
+    private int countCompleted() {
+        int n = 0;
+        for (Todo t : todos) if (isCompleted(t)) n++;
+        return n;
+    }
+
+    private static boolean isCompleted(Todo t) {
+        return TodoStatus.COMPLETED.label.equals(t.status);
+    }
+
+    @Override
+    public int getRowCount() {
+        return todos.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return String.class;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        Todo t = todos.get(row);
+        return column == TASK_COLUMN ? t.task : t.status;
+    }
+}
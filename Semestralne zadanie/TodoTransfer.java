@@ -0,0 +1,369 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+// Import/export of todo lists as CSV (task,status,created,completed) or JSON Lines
+// ({"task":..,"status":..,"created":..,"completed":..}); times are ISO-8601 instants
+// (epoch millis are accepted on import) and empty/missing when not known.
+// Reading streams the file: records are parsed straight off a buffered reader and handed
+// out in batches, so only one batch of Todos (never the whole file) is held at a time.
+class TodoTransfer {
+
+    enum Format {
+        CSV, JSONL;
+
+        static Format of(Path file) {
+            String name = file.getFileName().toString().toLowerCase();
+            return name.endsWith(".jsonl") || name.endsWith(".json") ? JSONL : CSV;
+        }
+    }
+
+    interface Sink {
+        // bytesRead is how far into the file the batch ends; false stops the import
+        boolean accept(List<Todo> batch, long bytesRead) throws IOException;
+    }
+
+    interface Progress {
+        // Called every PROGRESS_STEP rows; false stops the export
+        boolean written(int rows);
+    }
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int PROGRESS_STEP = 10_000;
+
+    // Returns the number of todos handed to the sink
+    static int read(Path file, int batchSize, Sink sink) throws IOException {
+        try (CountingInputStream counter = new CountingInputStream(Files.newInputStream(file));
+             Reader in = new InputStreamReader(counter, StandardCharsets.UTF_8)) {
+            return Format.of(file) == Format.JSONL
+                    ? readJsonLines(new BufferedReader(in, BUFFER_SIZE), counter, batchSize, sink)
+                    : readCsv(in, counter, batchSize, sink);
+        }
+    }
+
+    // False if stopped by the progress callback (the file is then incomplete)
+    static boolean write(Path file, List<Todo> todos, Progress progress) throws IOException {
+        Format format = Format.of(file);
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file),
+                StandardCharsets.UTF_8), BUFFER_SIZE)) {
+            if (format == Format.CSV) out.write("task,status,created,completed\n");
+            int rows = 0;
+            for (Todo t : todos) {
+                if (++rows % PROGRESS_STEP == 0 && !progress.written(rows)) return false;
+                if (format == Format.CSV) {
+                    writeCsvField(out, t.task);
+                    out.write(',');
+                    out.write(TodoStatus.of(t.status).label);
+                    out.write(',');
+                    out.write(formatTime(t.created));
+                    out.write(',');
+                    out.write(formatTime(t.completed));
+                    out.write('\n');
+                } else {
+                    out.write("{\"task\":");
+                    writeJsonString(out, t.task);
+                    out.write(",\"status\":\"");
+                    out.write(TodoStatus.of(t.status).label);
+                    out.write('"');
+                    if (t.created > 0) out.write(",\"created\":\"" + formatTime(t.created) + '"');
+                    if (t.completed > 0) out.write(",\"completed\":\"" + formatTime(t.completed) + '"');
+                    out.write("}\n");
+                }
+            }
+        }
+        return true;
+    }
+
+    // ===== CSV =====
+
+    // RFC 4180: quoted fields may hold commas, quotes ("") and line breaks.
+    // An optional header row (first field "task") is skipped; missing columns mean
+    // Pending / unknown times.
+    private static int readCsv(Reader in, CountingInputStream counter, int batchSize, Sink sink) throws IOException {
+        char[] buf = new char[BUFFER_SIZE];
+        List<Todo> batch = new ArrayList<>(batchSize);
+        List<String> fields = new ArrayList<>(2);
+        StringBuilder field = new StringBuilder();
+        // quoteSeen: a '"' inside a quoted field, either an escaped quote or the closing one
+        boolean quoted = false, quoteSeen = false, fieldStarted = false, first = true;
+        int total = 0;
+
+        for (int n = in.read(buf); ; n = in.read(buf)) {
+            // at end of input one more pass with c = -1 finishes the last record
+            int end = n < 0 ? 1 : n;
+            for (int i = 0; i < end; i++) {
+                int c = n < 0 ? -1 : buf[i];
+
+                if (quoteSeen) {
+                    quoteSeen = false;
+                    if (c == '"') {
+                        field.append('"');
+                        continue;
+                    }
+                    quoted = false;
+                } else if (quoted) {
+                    if (c < 0) throw new IOException("Unterminated quoted field");
+                    if (c == '"') quoteSeen = true;
+                    else field.append((char) c);
+                    continue;
+                }
+
+                if (c == '"' && field.length() == 0) {
+                    quoted = fieldStarted = true;
+                } else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                    fieldStarted = true;
+                } else if (c == '\n' || c < 0) {
+                    if (field.length() > 0 && field.charAt(field.length() - 1) == '\r') field.setLength(field.length() - 1);
+                    if (fieldStarted || field.length() > 0 || !fields.isEmpty()) {
+                        fields.add(field.toString());
+                        boolean header = first && "task".equalsIgnoreCase(fields.get(0).trim());
+                        first = false;
+                        if (!header && !fields.get(0).isEmpty()) {
+                            batch.add(todo(fields.get(0), fields.size() > 1 ? fields.get(1) : null,
+                                    fields.size() > 2 ? fields.get(2) : null, fields.size() > 3 ? fields.get(3) : null));
+                            if (batch.size() >= batchSize) {
+                                total += batch.size();
+                                if (!sink.accept(batch, counter.count)) return total;
+                                batch = new ArrayList<>(batchSize);
+                            }
+                        }
+                    }
+                    fields.clear();
+                    field.setLength(0);
+                    fieldStarted = false;
+                } else {
+                    field.append((char) c);
+                }
+            }
+            if (n < 0) break;
+        }
+
+        if (!batch.isEmpty()) {
+            total += batch.size();
+            sink.accept(batch, counter.count);
+        }
+        return total;
+    }
+
+    private static void writeCsvField(Writer out, String s) throws IOException {
+        boolean quote = false;
+        for (int i = 0; i < s.length() && !quote; i++) {
+            char c = s.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            out.write(s);
+            return;
+        }
+        out.write('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"') out.write('"');
+            out.write(c);
+        }
+        out.write('"');
+    }
+
+    // ===== JSON Lines =====
+
+    // One flat object per line; only the "task", "status", "created" and "completed" members are used
+    private static int readJsonLines(BufferedReader in, CountingInputStream counter, int batchSize, Sink sink)
+            throws IOException {
+        List<Todo> batch = new ArrayList<>(batchSize);
+        StringBuilder sb = new StringBuilder();
+        int total = 0, lineNo = 0;
+
+        for (String line; (line = in.readLine()) != null; ) {
+            lineNo++;
+            if (line.trim().isEmpty()) continue;
+
+            String task = null, status = null, created = null, completed = null;
+            JsonCursor json = new JsonCursor(line, lineNo, sb);
+            json.expect('{');
+            if (!json.consume('}')) {
+                do {
+                    String key = json.string();
+                    json.expect(':');
+                    String value = json.value();
+                    if ("task".equals(key)) task = value;
+                    else if ("status".equals(key)) status = value;
+                    else if ("created".equals(key)) created = value;
+                    else if ("completed".equals(key)) completed = value;
+                } while (json.consume(','));
+                json.expect('}');
+            }
+            if (task == null || task.isEmpty()) continue;
+
+            batch.add(todo(task, status, created, completed));
+            if (batch.size() >= batchSize) {
+                total += batch.size();
+                if (!sink.accept(batch, counter.count)) return total;
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            total += batch.size();
+            sink.accept(batch, counter.count);
+        }
+        return total;
+    }
+
+    private static final class JsonCursor {
+        private final String s;
+        private final int lineNo;
+        private final StringBuilder sb;
+        private int pos;
+
+        JsonCursor(String s, int lineNo, StringBuilder sb) {
+            this.s = s;
+            this.lineNo = lineNo;
+            this.sb = sb;
+        }
+
+        boolean consume(char c) {
+            skipSpace();
+            if (pos < s.length() && s.charAt(pos) == c) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        void expect(char c) throws IOException {
+            if (!consume(c)) throw error("expected '" + c + "'");
+        }
+
+        // A string, the literal text of a number/boolean, or null for null
+        String value() throws IOException {
+            skipSpace();
+            if (pos < s.length() && s.charAt(pos) == '"') return string();
+            int start = pos;
+            while (pos < s.length() && ",}] \t".indexOf(s.charAt(pos)) < 0) pos++;
+            if (pos == start) throw error("expected a value");
+            String literal = s.substring(start, pos);
+            return "null".equals(literal) ? null : literal;
+        }
+
+        String string() throws IOException {
+            expect('"');
+            sb.setLength(0);
+            while (true) {
+                if (pos >= s.length()) throw error("unterminated string");
+                char c = s.charAt(pos++);
+                if (c == '"') return sb.toString();
+                if (c != '\\') {
+                    sb.append(c);
+                    continue;
+                }
+                if (pos >= s.length()) throw error("unterminated string");
+                char e = s.charAt(pos++);
+                switch (e) {
+                    case 'n': sb.append('\n'); break;
+                    case 'r': sb.append('\r'); break;
+                    case 't': sb.append('\t'); break;
+                    case 'b': sb.append('\b'); break;
+                    case 'f': sb.append('\f'); break;
+                    case 'u':
+                        if (pos + 4 > s.length()) throw error("bad \\u escape");
+                        try {
+                            sb.append((char) Integer.parseInt(s.substring(pos, pos + 4), 16));
+                        } catch (NumberFormatException ex) {
+                            throw error("bad \\u escape");
+                        }
+                        pos += 4;
+                        break;
+                    default: sb.append(e); // \" \\ \/
+                }
+            }
+        }
+
+        private void skipSpace() {
+            while (pos < s.length() && Character.isWhitespace(s.charAt(pos))) pos++;
+        }
+
+        private IOException error(String what) {
+            return new IOException("Line " + lineNo + ": " + what);
+        }
+    }
+
+    private static void writeJsonString(Writer out, String s) throws IOException {
+        out.write('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"': out.write("\\\""); break;
+                case '\\': out.write("\\\\"); break;
+                case '\n': out.write("\\n"); break;
+                case '\r': out.write("\\r"); break;
+                case '\t': out.write("\\t"); break;
+                default:
+                    if (c < 0x20) out.write(String.format("\\u%04x", (int) c));
+                    else out.write(c);
+            }
+        }
+        out.write('"');
+    }
+
+    // ===== Helpers =====
+
+    // Status cells always hold the shared labels (see TodoTableModel). A task without a
+    // creation time counts as created now, when it enters the list.
+    private static Todo todo(String task, String status, String created, String completed) {
+        boolean done = status != null && TodoStatus.COMPLETED.label.equalsIgnoreCase(status.trim());
+        long createdAt = parseTime(created);
+        return new Todo(task, done ? TodoStatus.COMPLETED.label : TodoStatus.PENDING.label,
+                createdAt > 0 ? createdAt : System.currentTimeMillis(), done ? parseTime(completed) : 0);
+    }
+
+    private static String formatTime(long millis) {
+        return millis > 0 ? Instant.ofEpochMilli(millis).toString() : "";
+    }
+
+    // ISO-8601 instant or epoch millis; 0 if empty or unreadable
+    private static long parseTime(String s) {
+        if (s == null || (s = s.trim()).isEmpty()) return 0;
+        try {
+            return s.chars().allMatch(Character::isDigit) ? Long.parseLong(s) : Instant.parse(s).toEpochMilli();
+        } catch (NumberFormatException | DateTimeParseException e) {
+            return 0;
+        }
+    }
+
+    // Bytes pulled from the file so far, for the progress bar
+    private static final class CountingInputStream extends FilterInputStream {
+        volatile long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+class User implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    String username, password, email, studentId;
+    List<Todo> todos = new ArrayList<>();
+
+    public User(String u, String p, String e, String id) {
+        username = u;
+        password = p;
+        email = e;
+        studentId = id;
+    }
+}
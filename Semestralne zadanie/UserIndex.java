@@ -0,0 +1,206 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Memory-mapped open-addressing hash table: username -> offset of the user's newest
+// journal record. Only the hash is stored, so every hit is confirmed against the journal
+// record itself (Owner). Startup maps the file instead of reading it, so it costs the
+// same for 100 users as for 1M; pages are faulted in as lookups touch them.
+class UserIndex implements Closeable {
+
+    interface Owner {
+        boolean owns(long offset, String username) throws IOException;
+    }
+
+    private static final int MAGIC = 0x54554B49; // "TUKI"
+    private static final int VERSION = 1;
+
+    // header: magic, version, capacity, count, covered journal length, clean flag
+    private static final int HEADER_SIZE = 32;
+    private static final int CAPACITY_POS = 8;
+    private static final int COUNT_POS = 12;
+    private static final int COVERED_POS = 16;
+    private static final int CLEAN_POS = 24;
+
+    // slot: hash (0 = empty), offset
+    private static final int SLOT_SIZE = 16;
+    private static final int MIN_CAPACITY = 1 << 12;
+
+    private final FileChannel channel;
+    private final Owner owner;
+    private MappedByteBuffer map;
+    private int capacity;
+    private int count;
+    private final boolean wasClean;
+
+    private UserIndex(FileChannel channel, Owner owner) throws IOException {
+        this.channel = channel;
+        this.owner = owner;
+
+        boolean valid = false;
+        if (channel.size() >= HEADER_SIZE) {
+            map = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+            int cap = map.getInt(CAPACITY_POS);
+            valid = map.getInt(0) == MAGIC && map.getInt(4) == VERSION
+                    && cap >= MIN_CAPACITY && Integer.bitCount(cap) == 1
+                    && channel.size() >= HEADER_SIZE + (long) cap * SLOT_SIZE;
+            if (valid) {
+                capacity = cap;
+                map = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) cap * SLOT_SIZE);
+                count = map.getInt(COUNT_POS);
+            }
+        }
+
+        wasClean = valid && map.getInt(CLEAN_POS) == 1;
+        if (!valid) {
+            capacity = MIN_CAPACITY;
+            map = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * SLOT_SIZE);
+            map.putInt(0, MAGIC);
+            map.putInt(4, VERSION);
+            map.putInt(CAPACITY_POS, capacity);
+            clear();
+        }
+        map.putInt(CLEAN_POS, 0);
+    }
+
+    static UserIndex open(Path file, Owner owner) throws IOException {
+        FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            return new UserIndex(ch, owner);
+        } catch (IOException e) {
+            ch.close();
+            throw e;
+        }
+    }
+
+    // False after a crash: entries may point past what actually reached the journal
+    boolean wasClosedCleanly() {
+        return wasClean;
+    }
+
+    // How much of the journal the index already reflects
+    long coveredLength() {
+        return map.getLong(COVERED_POS);
+    }
+
+    void setCoveredLength(long length) {
+        map.putLong(COVERED_POS, length);
+    }
+
+    int size() {
+        return count;
+    }
+
+    void clear() {
+        for (long pos = HEADER_SIZE, endPos = HEADER_SIZE + (long) capacity * SLOT_SIZE; pos < endPos; pos += 8) {
+            map.putLong((int) pos, 0L);
+        }
+        count = 0;
+        map.putInt(COUNT_POS, 0);
+        map.putLong(COVERED_POS, 0L);
+    }
+
+    // Journal offset of the user's newest record, or -1
+    long get(String username) throws IOException {
+        long h = hash(username);
+        int mask = capacity - 1;
+        for (int i = (int) h & mask; ; i = (i + 1) & mask) {
+            int pos = HEADER_SIZE + i * SLOT_SIZE;
+            long slotHash = map.getLong(pos);
+            if (slotHash == 0) return -1;
+            if (slotHash == h) {
+                long offset = map.getLong(pos + 8);
+                if (owner.owns(offset, username)) return offset;
+            }
+        }
+    }
+
+    // previous is the offset the caller believes is stored now (or -1); a slot holding
+    // exactly that offset is taken as the user's without going back to the journal
+    void put(String username, long offset, long previous) throws IOException {
+        long h = hash(username);
+        int mask = capacity - 1;
+        for (int i = (int) h & mask; ; i = (i + 1) & mask) {
+            int pos = HEADER_SIZE + i * SLOT_SIZE;
+            long slotHash = map.getLong(pos);
+            if (slotHash == 0) {
+                insert(pos, h, offset);
+                return;
+            }
+            long current = map.getLong(pos + 8);
+            if (slotHash == h && ((previous >= 0 && current == previous) || owner.owns(current, username))) {
+                map.putLong(pos + 8, offset);
+                return;
+            }
+        }
+    }
+
+    private void insert(int pos, long h, long offset) throws IOException {
+        // offset first, hash last: the hash is what marks the slot as used
+        map.putLong(pos + 8, offset);
+        map.putLong(pos, h);
+        map.putInt(COUNT_POS, ++count);
+        if (count * 4L > capacity * 3L) grow();
+    }
+
+    // Doubles the table in place (no rename, so it also works while mapped on Windows)
+    private void grow() throws IOException {
+        long[] hashes = new long[count];
+        long[] offsets = new long[count];
+        int n = 0;
+        for (int i = 0; i < capacity; i++) {
+            int pos = HEADER_SIZE + i * SLOT_SIZE;
+            long slotHash = map.getLong(pos);
+            if (slotHash != 0) {
+                hashes[n] = slotHash;
+                offsets[n++] = map.getLong(pos + 8);
+            }
+        }
+
+        long covered = coveredLength();
+        int newCapacity = capacity * 2;
+        if ((long) HEADER_SIZE + (long) newCapacity * SLOT_SIZE > Integer.MAX_VALUE) {
+            throw new IOException("User index is full");
+        }
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) newCapacity * SLOT_SIZE);
+        capacity = newCapacity;
+        map.putInt(CAPACITY_POS, capacity);
+        clear();
+
+        int mask = capacity - 1;
+        for (int k = 0; k < n; k++) {
+            int i = (int) hashes[k] & mask;
+            while (map.getLong(HEADER_SIZE + i * SLOT_SIZE) != 0) i = (i + 1) & mask;
+            int pos = HEADER_SIZE + i * SLOT_SIZE;
+            map.putLong(pos + 8, offsets[k]);
+            map.putLong(pos, hashes[k]);
+        }
+        count = n;
+        map.putInt(COUNT_POS, count);
+        setCoveredLength(covered);
+    }
+
+    // 64-bit FNV-1a with a final mix; 0 is reserved for empty slots
+    static long hash(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h == 0 ? 1 : h;
+    }
+
+    @Override
+    public void close() throws IOException {
+        map.putInt(CLEAN_POS, 1);
+        map.force();
+        channel.close();
+    }
+}
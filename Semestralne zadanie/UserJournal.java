@@ -0,0 +1,303 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.CRC32;
+
+// Append-only log of user changes (replaces rewriting the whole users.dat on every save).
+// Every change is one small record; a single writer thread takes everything queued by
+// concurrent callers, writes it in one go and syncs the batch with a single force().
+// The journal only frames and stores records - what is inside them is up to UserStore.
+class UserJournal implements Closeable {
+
+    private static final int MAGIC = 0x54554B4A; // "TUKJ"
+    private static final int HEADER_SIZE = 8;
+    // length + crc in front of every record
+    private static final int RECORD_OVERHEAD = 8;
+
+    interface Visitor {
+        void record(long offset, byte[] payload, int length) throws IOException;
+    }
+
+    // Offset of an appended record plus a future that completes once it is on disk
+    static final class Entry {
+        final long offset;
+        final CompletableFuture<Void> written;
+
+        Entry(long offset, CompletableFuture<Void> written) {
+            this.offset = offset;
+            this.written = written;
+        }
+    }
+
+    private final FileChannel channel;
+    private final int version;
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private volatile boolean closed;
+    // set when a batch could not be written; the journal takes no more records after that
+    private volatile IOException failure;
+
+    // end includes records still waiting in the queue, durableEnd only what has been forced
+    private long end;
+    private volatile long durableEnd;
+
+    private UserJournal(FileChannel channel, int version) throws IOException {
+        this.channel = channel;
+        this.version = version;
+        end = durableEnd = channel.size();
+        writer = new Thread(this::writeLoop, "user-journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    static UserJournal open(Path file, int newFileVersion) throws IOException {
+        FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            int version;
+            if (ch.size() < HEADER_SIZE) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(newFileVersion);
+                header.flip();
+                ch.truncate(0);
+                ch.write(header, 0);
+                ch.force(true);
+                version = newFileVersion;
+            } else {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                ch.read(header, 0);
+                header.flip();
+                if (header.getInt() != MAGIC) throw new IOException("Not a user journal: " + file);
+                version = header.getInt();
+            }
+            return new UserJournal(ch, version);
+        } catch (IOException e) {
+            ch.close();
+            throw e;
+        }
+    }
+
+    // Format version of the payloads, 0 if the file does not exist yet
+    static int version(Path file) throws IOException {
+        if (!Files.exists(file) || Files.size(file) < HEADER_SIZE) return 0;
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+            return in.readInt() == MAGIC ? in.readInt() : -1;
+        }
+    }
+
+    int version() {
+        return version;
+    }
+
+    static long firstOffset() {
+        return HEADER_SIZE;
+    }
+
+    synchronized long size() {
+        return end;
+    }
+
+    synchronized boolean isEmpty() {
+        return end <= HEADER_SIZE;
+    }
+
+    // ===== Appending =====
+
+    Entry append(byte[] payload) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        if (closed) {
+            done.completeExceptionally(new IOException("Journal is closed"));
+            return new Entry(-1, done);
+        }
+
+        ByteBuffer record = ByteBuffer.allocate(RECORD_OVERHEAD + payload.length);
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        record.putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+        record.flip();
+
+        // offsets are handed out in queue order, so the writer lays records down exactly there
+        synchronized (this) {
+            if (failure != null) {
+                done.completeExceptionally(new IOException("Journal write failed earlier", failure));
+                return new Entry(-1, done);
+            }
+            long offset = end;
+            end += record.remaining();
+            queue.add(new Pending(offset, record, done));
+            return new Entry(offset, done);
+        }
+    }
+
+    // Group commit: drain whatever has queued up while the previous batch was syncing
+    private void writeLoop() {
+        List<Pending> batch = new ArrayList<>();
+        while (true) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch);
+
+            boolean stop = false;
+            long start = -1, last = -1;
+            List<ByteBuffer> buffers = new ArrayList<>(batch.size());
+            for (Pending p : batch) {
+                if (p.record == null) {
+                    stop = true;
+                } else if (p.record.hasRemaining()) {
+                    if (start < 0) start = p.offset;
+                    last = p.offset + p.record.remaining();
+                    buffers.add(p.record);
+                }
+            }
+
+            IOException error = null;
+            try {
+                if (!buffers.isEmpty()) {
+                    ByteBuffer[] arr = buffers.toArray(new ByteBuffer[0]);
+                    channel.position(start);
+                    long remaining = last - start;
+                    while (remaining > 0) remaining -= channel.write(arr);
+                    channel.force(false);
+                    durableEnd = last;
+                }
+            } catch (IOException e) {
+                error = e;
+                e.printStackTrace();
+                fail(e, batch);
+                for (Pending p : batch) stop |= p.record == null;
+            }
+
+            for (Pending p : batch) {
+                if (error == null) p.done.complete(null);
+                else p.done.completeExceptionally(error);
+            }
+            batch.clear();
+            if (stop) return;
+        }
+    }
+
+    // The records queued behind a failed batch were placed after it. They fail too, and so
+    // does every later append, so nothing ever lands beyond the hole; end goes back to what
+    // is on disk. Reopening the journal recovers.
+    private void fail(IOException e, List<Pending> batch) {
+        synchronized (this) {
+            failure = e;
+            queue.drainTo(batch);
+            end = durableEnd;
+        }
+        try {
+            channel.truncate(durableEnd);
+        } catch (IOException ignored) {
+            // scan() cuts the torn tail off on the next open
+        }
+    }
+
+    // True once a write has failed; the index must then be rebuilt on the next open
+    boolean hasFailed() {
+        return failure != null;
+    }
+
+    // ===== Reading =====
+
+    // Reads one record's payload; waits for the writer if the record is still queued
+    byte[] read(long offset) throws IOException {
+        if (offset >= durableEnd) flush();
+        if (offset < HEADER_SIZE || offset + RECORD_OVERHEAD > durableEnd) {
+            throw new IOException("Bad journal offset " + offset);
+        }
+
+        ByteBuffer head = ByteBuffer.allocate(RECORD_OVERHEAD);
+        readFully(head, offset);
+        int len = head.getInt(0);
+        int sum = head.getInt(4);
+        if (len <= 0 || offset + RECORD_OVERHEAD + len > durableEnd) {
+            throw new IOException("Bad journal record at " + offset);
+        }
+
+        ByteBuffer body = ByteBuffer.allocate(len);
+        readFully(body, offset + RECORD_OVERHEAD);
+        CRC32 crc = new CRC32();
+        crc.update(body.array(), 0, len);
+        if ((int) crc.getValue() != sum) throw new IOException("Corrupt journal record at " + offset);
+        return body.array();
+    }
+
+    private void readFully(ByteBuffer buf, long pos) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = channel.read(buf, pos + buf.position());
+            if (n < 0) throw new EOFException();
+        }
+    }
+
+    // Walks the records from the given offset to the end. A torn record at the tail
+    // (crash during write) is cut off so the next append starts on a clean boundary.
+    // Only meant for startup, before anything has been appended.
+    synchronized void scan(long from, Visitor visitor) throws IOException {
+        long pos = Math.max(from, HEADER_SIZE);
+        long size = channel.size();
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Channels.newInputStream(channel.position(pos)), 1 << 16));
+        byte[] buf = new byte[256];
+        CRC32 crc = new CRC32();
+
+        while (pos + RECORD_OVERHEAD <= size) {
+            int len = in.readInt();
+            int sum = in.readInt();
+            if (len <= 0 || pos + RECORD_OVERHEAD + len > size) break;
+            if (buf.length < len) buf = new byte[Math.max(len, buf.length * 2)];
+            in.readFully(buf, 0, len);
+            crc.reset();
+            crc.update(buf, 0, len);
+            if ((int) crc.getValue() != sum) break;
+
+            visitor.record(pos, buf, len);
+            pos += RECORD_OVERHEAD + len;
+        }
+
+        if (pos < size) {
+            channel.truncate(pos);
+            end = durableEnd = pos;
+        }
+    }
+
+    // Blocks until everything appended so far is on disk
+    void flush() {
+        if (closed || failure != null) return;
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        queue.add(new Pending(-1, ByteBuffer.allocate(0), done));
+        done.handle((v, e) -> null).join(); // a failed write is reported to its own appender
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        queue.add(new Pending(-1, null, new CompletableFuture<>()));
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+    }
+
+    private static final class Pending {
+        final long offset;
+        final ByteBuffer record;
+        final CompletableFuture<Void> done;
+
+        Pending(long offset, ByteBuffer record, CompletableFuture<Void> done) {
+            this.offset = offset;
+            this.record = record;
+            this.done = done;
+        }
+    }
+}
@@ -0,0 +1,372 @@
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Accounts and todo lists without any UI, safe to call from any number of threads: the
+// GUI's worker threads, network handlers, the stress test. Logged-in accounts sit in a
+// ConcurrentHashMap and every change to a user runs under that user's stripe lock, so one
+// account's operations happen in a single order (the same order they reach its shard)
+// while different users go ahead in parallel. Password hashing runs outside the locks.
+// All calls block on disk I/O; password arrays are left for the caller to clear.
+//
+// Every change also bumps the account's version and goes into a short in-memory change
+// log, so a remote client that knows (epoch, version) can catch up with since() instead
+// of fetching the whole list. The epoch is picked when the account is loaded; versions
+// from an earlier load (or another server run) never match it.
+final class UserService implements AccountService {
+
+    private static final int STRIPES = 64; // power of two
+    // how much history since() can serve before a client gets the full list instead
+    private static final int MAX_CHANGES = 1_000;
+    private static final int MAX_CHANGED_TODOS = 10_000;
+
+    // One change to a list: todos appended, or a row completed or deleted
+    static final class Change {
+        static final byte ADD = 1, COMPLETE = 2, DELETE = 3;
+
+        final long version;
+        final byte type;
+        final int index;
+        final long when;
+        final List<Todo> added; // ADD only; copies nobody modifies
+
+        Change(long version, byte type, int index, long when, List<Todo> added) {
+            this.version = version;
+            this.type = type;
+            this.index = index;
+            this.when = when;
+            this.added = added;
+        }
+
+        void applyTo(List<Todo> todos) {
+            switch (type) {
+                case ADD:
+                    for (Todo t : added) todos.add(t.copy());
+                    break;
+                case COMPLETE: {
+                    Todo t = todos.get(index);
+                    t.status = TodoStatus.COMPLETED.label;
+                    t.completed = when;
+                    break;
+                }
+                case DELETE:
+                    todos.remove(index);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown change type " + type);
+            }
+        }
+    }
+
+    // What a client at some version is missing: either the changes after it, or (when the
+    // log does not reach back that far, or the epoch changed) the whole list
+    static final class Delta {
+        final long epoch, version;
+        final List<Todo> snapshot; // null when changes is the answer
+        final List<Change> changes;
+
+        Delta(long epoch, long version, List<Todo> snapshot, List<Change> changes) {
+            this.epoch = epoch;
+            this.version = version;
+            this.snapshot = snapshot;
+            this.changes = changes;
+        }
+    }
+
+    // A loaded account; user.todos is the live list. Guarded by the user's stripe lock.
+    private static final class Account {
+        final User user;
+        final long epoch = ThreadLocalRandom.current().nextLong() | 1; // never 0
+        long version;
+        final ArrayDeque<Change> changes = new ArrayDeque<>();
+        int changedTodos;
+        int sessions;
+
+        Account(User user) {
+            this.user = user;
+        }
+
+        void record(byte type, int index, long when, List<Todo> added) {
+            changes.addLast(new Change(++version, type, index, when, added));
+            if (added != null) changedTodos += added.size();
+            while (changes.size() > MAX_CHANGES || changedTodos > MAX_CHANGED_TODOS && changes.size() > 1) {
+                Change old = changes.removeFirst();
+                if (old.added != null) changedTodos -= old.added.size();
+            }
+        }
+    }
+
+    private final UserStore store;
+    private final TodoShards shards;
+    private final Map<String, Account> accounts = new ConcurrentHashMap<>();
+    private final ReentrantLock[] locks = new ReentrantLock[STRIPES];
+
+    UserService(UserStore store, TodoShards shards) {
+        this.store = store;
+        this.shards = shards;
+        for (int i = 0; i < locks.length; i++) locks[i] = new ReentrantLock();
+    }
+
+    private ReentrantLock lockFor(String username) {
+        int h = username.hashCode();
+        return locks[(h ^ (h >>> 16)) & (STRIPES - 1)];
+    }
+
+    // ===== Accounts =====
+
+    // False if the name is taken. The hash is computed first, so a taken name costs the same.
+    @Override
+    public boolean register(String username, char[] password, String email, String studentId) throws IOException {
+        String hash = PasswordHasher.hash(password);
+        ReentrantLock lock = lockFor(username);
+        lock.lock();
+        try {
+            if (store.exists(username)) return false;
+            PersistenceExecutor.await(store.register(new User(username, hash, email, studentId)));
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Null for an unknown user or a wrong password, both after one hash check. The first
+    // session of an account loads its todos (moving journaled ones into the shard) and
+    // upgrades a plaintext or cheaper password hash.
+    @Override
+    public Session login(String username, char[] password) throws IOException {
+        ReentrantLock lock = lockFor(username);
+        User stored;
+        String storedHash;
+        lock.lock();
+        try {
+            Account a = accounts.get(username);
+            stored = a != null ? a.user : store.load(username);
+            storedHash = stored != null ? stored.password : null;
+        } finally {
+            lock.unlock();
+        }
+
+        if (!PasswordHasher.verify(storedHash, password) || stored == null) return null;
+        String rehash = PasswordHasher.needsRehash(storedHash) ? PasswordHasher.hash(password) : null;
+
+        lock.lock();
+        try {
+            Account a = accounts.get(username);
+            if (a == null) {
+                User u = stored;
+                List<Todo> todos = shards.load(username);
+                if (todos == null) {
+                    todos = new ArrayList<>(u.todos);
+                    shards.save(username, todos);
+                }
+                u.todos = todos;
+                a = new Account(u);
+                accounts.put(username, a);
+                store.beginSession(username);
+            }
+            if (rehash != null && PasswordHasher.needsRehash(a.user.password)) {
+                a.user.password = rehash;
+                PersistenceExecutor.await(store.changePassword(a.user));
+            }
+            a.sessions++;
+            return new Session(a.user.username, a.user.email, a.user.studentId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Writes the shard as one compact snapshot; the last session out also ends the
+    // account's journal session. Logging out twice is harmless.
+    @Override
+    public void logout(Session s) throws IOException {
+        ReentrantLock lock = lockFor(s.username);
+        lock.lock();
+        try {
+            if (!s.open) return;
+            s.open = false;
+            Account a = accounts.get(s.username);
+            if (a == null) return; // service already closed
+            shards.save(s.username, a.user.todos);
+            if (--a.sessions == 0) {
+                accounts.remove(s.username);
+                PersistenceExecutor.await(store.logout(a.user));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Compacts the shard without ending the session
+    void save(Session s) throws IOException {
+        ReentrantLock lock = lockFor(s.username);
+        lock.lock();
+        try {
+            shards.save(s.username, account(s).user.todos);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // ===== Todos =====
+
+    // A copy of the list, consistent as of one point in time
+    @Override
+    public List<Todo> todos(Session s) {
+        ReentrantLock lock = lockFor(s.username);
+        lock.lock();
+        try {
+            List<Todo> todos = account(s).user.todos;
+            List<Todo> copy = new ArrayList<>(todos.size());
+            for (Todo t : todos) copy.add(t.copy());
+            return copy;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Each change is written to the shard first and applied in memory only once that worked
+    @Override
+    public void add(Session s, String task, long created) throws IOException {
+        ReentrantLock lock = lockFor(s.username);
+        lock.lock();
+        try {
+            Account a = account(s);
+            shards.add(s.username, task, created);
+            Todo t = new Todo(task, TodoStatus.PENDING.label, created, 0);
+            a.user.todos.add(t);
+            a.record(Change.ADD, 0, 0, Collections.singletonList(t.copy()));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void addAll(Session s, List<Todo> batch) throws IOException {
+        ReentrantLock lock = lockFor(s.username);
+        lock.lock();
+        try {
+            Account a = account(s);
+            List<Todo> copies = new ArrayList<>(batch.size());
+            for (Todo t : batch) copies.add(t.copy());
+            shards.addAll(s.username, copies);
+            a.user.todos.addAll(copies);
+            List<Todo> logged = new ArrayList<>(copies.size());
+            for (Todo t : copies) logged.add(t.copy());
+            a.record(Change.ADD, 0, 0, logged);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // False if there is no such row or it is already completed
+    @Override
+    public boolean complete(Session s, int index, long when) throws IOException {
+        ReentrantLock lock = lockFor(s.username);
+        lock.lock();
+        try {
+            Account a = account(s);
+            List<Todo> todos = a.user.todos;
+            if (index < 0 || index >= todos.size()) return false;
+            Todo t = todos.get(index);
+            if (TodoStatus.of(t.status) == TodoStatus.COMPLETED) return false;
+            shards.complete(s.username, index, when);
+            t.status = TodoStatus.COMPLETED.label;
+            t.completed = when;
+            a.record(Change.COMPLETE, index, when, null);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean delete(Session s, int index) throws IOException {
+        ReentrantLock lock = lockFor(s.username);
+        lock.lock();
+        try {
+            Account a = account(s);
+            List<Todo> todos = a.user.todos;
+            if (index < 0 || index >= todos.size()) return false;
+            shards.delete(s.username, index);
+            todos.remove(index);
+            a.record(Change.DELETE, index, 0, null);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // ===== Versions (for remote clients) =====
+
+    // Everything after (epoch, version); pass epoch 0 to get the full list
+    Delta since(Session s, long epoch, long version) {
+        ReentrantLock lock = lockFor(s.username);
+        lock.lock();
+        try {
+            Account a = account(s);
+            Change oldest = a.changes.peekFirst();
+            boolean inLog = epoch == a.epoch && version <= a.version
+                    && (version == a.version || oldest != null && oldest.version <= version + 1);
+            if (!inLog) return new Delta(a.epoch, a.version, todos(s), null);
+
+            List<Change> missing = new ArrayList<>();
+            for (Change c : a.changes) {
+                if (c.version > version) missing.add(c);
+            }
+            return new Delta(a.epoch, a.version, null, missing);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Runs the change only if the account is still at (epoch, version), the state the
+    // client based its row indexes on. Returns the new version, or -1 if it was not.
+    long ifVersion(Session s, long epoch, long version, PersistenceExecutor.Action change) throws IOException {
+        ReentrantLock lock = lockFor(s.username);
+        lock.lock();
+        try {
+            Account a = account(s);
+            if (a.epoch != epoch || a.version != version) return -1;
+            change.run(); // the lock is reentrant
+            return a.version;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Number of accounts with at least one open session
+    int loggedIn() {
+        return accounts.size();
+    }
+
+    // Caller holds the user's lock
+    private Account account(Session s) {
+        Account a = s.open ? accounts.get(s.username) : null;
+        if (a == null) throw new IllegalStateException("Session of " + s.username + " is closed");
+        return a;
+    }
+
+    // Saves and logs out every loaded account, then closes the store
+    @Override
+    public void close() throws IOException {
+        for (String username : accounts.keySet()) {
+            ReentrantLock lock = lockFor(username);
+            lock.lock();
+            try {
+                Account a = accounts.remove(username);
+                if (a == null) continue;
+                shards.save(username, a.user.todos);
+                PersistenceExecutor.await(store.logout(a.user));
+            } finally {
+                lock.unlock();
+            }
+        }
+        store.close();
+    }
+}
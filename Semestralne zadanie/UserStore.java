@@ -0,0 +1,319 @@
+import java.io.*;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+// Account persistence: the journal holds the records, the mapped index says where each
+// user's newest record is. Every record points back at the same user's previous one,
+// so loading an account walks only that user's chain instead of the whole file.
+// Todo lists live in TodoShards; todo records found here come from before the split
+// and are only read so those lists can be moved over.
+class UserStore implements Closeable {
+
+    static final byte REGISTER = 1;
+    static final byte TODO_ADD = 2;
+    static final byte TODO_COMPLETE = 3;
+    static final byte TODO_DELETE = 4;
+    static final byte LOGOUT = 5;
+    static final byte CHECKPOINT = 6;
+    static final byte PASSWORD = 7;
+
+    // 1 = first journal (no back pointers), 2 = chained records,
+    // 3 = chained records in the compact RecordWriter encoding
+    private static final int FORMAT = 3;
+
+    // Head of a logged-in user's chain; long chains get collapsed into a checkpoint on logout
+    private static final class Head {
+        long offset;
+        int length;
+
+        Head(long offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private final UserJournal journal;
+    private final UserIndex index;
+    private final Map<String, Head> heads = new HashMap<>(); // live sessions only
+
+    private UserStore(UserJournal journal, Path indexFile) throws IOException {
+        this.journal = journal;
+        this.index = UserIndex.open(indexFile, this::owns);
+    }
+
+    static UserStore open(Path journalFile, Path indexFile, Path legacyFile) throws IOException {
+        Path fresh = journalFile.resolveSibling(journalFile.getFileName() + ".new");
+        if (!Files.exists(journalFile) && Files.exists(fresh)) {
+            Files.move(fresh, journalFile); // crashed right between the two renames of migrate()
+        }
+
+        int version = UserJournal.version(journalFile);
+        if (version == 1 || version == 2) {
+            Map<String, User> users = readOldJournal(journalFile, version);
+            Files.copy(journalFile, journalFile.resolveSibling(journalFile.getFileName() + ".v" + version),
+                    StandardCopyOption.REPLACE_EXISTING);
+            migrate(journalFile, indexFile, users);
+        } else if (version == 0 && Files.exists(legacyFile)) {
+            migrate(journalFile, indexFile, readLegacy(legacyFile));
+            Files.move(legacyFile, legacyFile.resolveSibling(legacyFile.getFileName() + ".migrated"),
+                    StandardCopyOption.REPLACE_EXISTING);
+        } else if (version != 0 && version != FORMAT) {
+            throw new IOException("Unsupported user journal version " + version);
+        }
+
+        UserJournal journal = UserJournal.open(journalFile, FORMAT);
+        UserStore store;
+        try {
+            store = new UserStore(journal, indexFile);
+        } catch (IOException e) {
+            journal.close();
+            throw e;
+        }
+        store.catchUp();
+        return store;
+    }
+
+    // Brings the index up to date with the journal tail; after a crash it is rebuilt
+    private synchronized void catchUp() throws IOException {
+        long from = index.coveredLength();
+        if (!index.wasClosedCleanly() || from < UserJournal.firstOffset() || from > journal.size()) {
+            index.clear();
+            from = UserJournal.firstOffset();
+        }
+        journal.scan(from, (offset, payload, length) -> {
+            RecordReader in = RecordReader.of(payload, 0, length);
+            byte type = in.readByte();
+            long prev = in.readOffset();
+            String username = in.readString();
+            if (type != LOGOUT) index.put(username, offset, prev);
+        });
+        index.setCoveredLength(journal.size());
+    }
+
+    // ===== Lookups =====
+
+    synchronized boolean exists(String username) throws IOException {
+        return index.get(username) >= 0;
+    }
+
+    // Reads a single account from the journal; null if unknown. User.todos only holds
+    // todos that were never moved to a shard.
+    synchronized User load(String username) throws IOException {
+        long head = index.get(username);
+        if (head < 0) return null;
+
+        long offset = head;
+        Deque<byte[]> chain = new ArrayDeque<>();
+        while (offset >= 0) {
+            byte[] payload = journal.read(offset);
+            chain.push(payload);
+            if (payload[0] == REGISTER || payload[0] == CHECKPOINT) break;
+            RecordReader in = RecordReader.of(payload, 0, payload.length);
+            in.readByte();
+            offset = in.readOffset();
+        }
+
+        User u = null;
+        for (byte[] payload : chain) {
+            RecordReader in = RecordReader.of(payload, 0, payload.length);
+            byte type = in.readByte();
+            in.readOffset();
+            u = apply(u, type, in.readString(), in);
+        }
+        return u;
+    }
+
+    // Starts tracking the user's chain for logout(); call once the login has succeeded
+    synchronized void beginSession(String username) throws IOException {
+        long head = index.get(username);
+        if (head < 0 || heads.containsKey(username)) return;
+        int length = 0;
+        for (long offset = head; offset >= 0; length++) {
+            byte[] payload = journal.read(offset);
+            if (payload[0] == REGISTER || payload[0] == CHECKPOINT) offset = -1;
+            else {
+                RecordReader in = RecordReader.of(payload, 0, payload.length);
+                in.readByte();
+                offset = in.readOffset();
+            }
+        }
+        heads.put(username, new Head(head, length));
+    }
+
+    private boolean owns(long offset, String username) throws IOException {
+        try {
+            byte[] payload = journal.read(offset);
+            RecordReader in = RecordReader.of(payload, 0, payload.length);
+            in.readByte();
+            in.readOffset();
+            return username.equals(in.readString());
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // Applies one record (already past type, back pointer and username) to the user
+    private static User apply(User u, byte type, String username, RecordReader in) throws IOException {
+        switch (type) {
+            case REGISTER:
+                return new User(username, in.readString(), in.readString(), in.readString());
+            case CHECKPOINT: {
+                User c = new User(username, in.readString(), in.readString(), in.readString());
+                int n = in.readVarInt();
+                for (int i = 0; i < n; i++) {
+                    c.todos.add(new Todo(in.readString(), in.readStatus()));
+                }
+                return c;
+            }
+            case PASSWORD:
+                if (u != null) u.password = in.readString();
+                return u;
+            case TODO_ADD:
+                if (u != null) u.todos.add(new Todo(in.readString(), TodoStatus.PENDING.label));
+                return u;
+            case TODO_COMPLETE: {
+                int i = in.readVarInt();
+                if (u != null && i >= 0 && i < u.todos.size()) u.todos.get(i).status = TodoStatus.COMPLETED.label;
+                return u;
+            }
+            case TODO_DELETE: {
+                int i = in.readVarInt();
+                if (u != null && i >= 0 && i < u.todos.size()) u.todos.remove(i);
+                return u;
+            }
+            default:
+                return u;
+        }
+    }
+
+    // ===== Changes =====
+
+    private interface Body {
+        void write(RecordWriter out);
+    }
+
+    synchronized CompletableFuture<Void> register(User u) throws IOException {
+        return append(REGISTER, u.username, out -> out
+                .writeString(u.password)
+                .writeString(u.email)
+                .writeString(u.studentId));
+    }
+
+    // Replaces the stored password (hash) with u.password
+    synchronized CompletableFuture<Void> changePassword(User u) throws IOException {
+        return append(PASSWORD, u.username, out -> out.writeString(u.password));
+    }
+
+    // Ends the session. Call after the user's todos are in their shard: an older chain
+    // (e.g. journaled todos) is then replaced by an account-only checkpoint.
+    synchronized CompletableFuture<Void> logout(User u) throws IOException {
+        Head head = heads.get(u.username);
+        CompletableFuture<Void> done;
+        if (head != null && head.length > 1) {
+            done = append(CHECKPOINT, u.username, checkpoint(u, false));
+        } else {
+            done = journal.append(encode(LOGOUT, -1, u.username, out -> { })).written;
+        }
+        heads.remove(u.username);
+        return done;
+    }
+
+    // Whole account in a single record; loading stops walking the chain here
+    private static Body checkpoint(User u, boolean withTodos) {
+        List<Todo> todos = withTodos ? u.todos : Collections.emptyList();
+        return out -> {
+            out.writeString(u.password).writeString(u.email).writeString(u.studentId);
+            out.writeVarInt(todos.size());
+            for (Todo t : todos) out.writeString(t.task).writeStatus(t.status);
+        };
+    }
+
+    private CompletableFuture<Void> append(byte type, String username, Body body) throws IOException {
+        Head head = heads.get(username);
+        long prev = head != null ? head.offset : index.get(username);
+
+        UserJournal.Entry entry = journal.append(encode(type, prev, username, body));
+        if (entry.offset < 0) return entry.written; // closed or failed, nothing was placed
+        index.put(username, entry.offset, prev);
+        index.setCoveredLength(journal.size());
+
+        if (head != null) {
+            head.offset = entry.offset;
+            head.length++;
+        }
+        return entry.written;
+    }
+
+    private static byte[] encode(byte type, long prev, String username, Body body) {
+        RecordWriter out = new RecordWriter();
+        out.writeByte(type).writeOffset(prev).writeString(username);
+        body.write(out);
+        return out.toByteArray();
+    }
+
+    // ===== Migration =====
+
+    // Writes the users as one checkpoint each into a fresh journal and swaps it in; the
+    // index is rebuilt on open. A crash before the final rename leaves the old data as is.
+    private static void migrate(Path journalFile, Path indexFile, Map<String, User> users) throws IOException {
+        Path fresh = journalFile.resolveSibling(journalFile.getFileName() + ".new");
+        Files.deleteIfExists(fresh);
+        try (UserJournal out = UserJournal.open(fresh, FORMAT)) {
+            for (User u : users.values()) out.append(encode(CHECKPOINT, -1, u.username, checkpoint(u, true)));
+            out.flush();
+        }
+        Files.deleteIfExists(indexFile);
+        try {
+            Files.move(fresh, journalFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(fresh, journalFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // Journals written with DataOutputStream: format 1 has no back pointers, format 2 does
+    private static Map<String, User> readOldJournal(Path file, int version) throws IOException {
+        Map<String, User> users = new LinkedHashMap<>();
+        try (UserJournal old = UserJournal.open(file, version)) {
+            old.scan(UserJournal.firstOffset(), (offset, payload, length) -> {
+                RecordReader in = RecordReader.legacy(payload, 0, length);
+                byte type = in.readByte();
+                if (version >= 2) in.readOffset();
+                String username = in.readString();
+                User u = apply(users.get(username), type, username, in);
+                if (u != null) users.put(username, u);
+            });
+        }
+        return users;
+    }
+
+    // The original users.dat: one serialized HashMap. A file that cannot be read fails the
+    // open, so it is neither migrated as an empty map nor renamed to .migrated.
+    @SuppressWarnings("unchecked")
+    private static Map<String, User> readLegacy(Path file) throws IOException {
+        try (ObjectInputStream ois = new ObjectInputStream(Files.newInputStream(file))) {
+            Map<String, User> map = (Map<String, User>) ois.readObject();
+            for (User u : map.values()) if (u.todos == null) u.todos = new ArrayList<>();
+            return map;
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Cannot read " + file + ": " + e, e);
+        }
+    }
+
+    void flush() {
+        journal.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        journal.flush();
+        // after a failed write the index may point at records that never made it to disk
+        if (journal.hasFailed()) index.clear();
+        else index.setCoveredLength(journal.size());
+        index.close();
+        journal.close();
+    }
+}
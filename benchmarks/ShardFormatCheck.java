@@ -0,0 +1,109 @@
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+// Checks that todo shards written by older versions still load and are rewritten in the
+// current format on the next change:
+//
+//   java -cp out ShardFormatCheck
+//
+// A version 2 shard (compact records, no timestamps) is written byte by byte the way
+// version 2 did: a snapshot, an add, a complete and a delete. Loading it must give the
+// same list; adding a task must rewrite it as version 3 with everything still there.
+// Exits with status 1 if any check fails.
+public class ShardFormatCheck {
+
+    private static final int MAGIC = 0x54554B54;
+    private static final byte SNAPSHOT = 1, ADD = 2, COMPLETE = 3, DELETE = 4;
+
+    private static int failures;
+
+    public static void main(String[] args) throws Exception {
+        Path dir = Files.createTempDirectory("shard-check");
+        try {
+            version2(dir);
+        } finally {
+            TempDirs.deleteTree(dir);
+        }
+        System.out.println(failures == 0 ? "OK" : failures + " check(s) failed");
+        if (failures > 0) System.exit(1);
+    }
+
+    private static void version2(Path dir) throws IOException {
+        String user = "old.student";
+        Path file = shardFile(dir, user);
+        Files.createDirectories(file.getParent());
+
+        List<byte[]> records = new ArrayList<>();
+        records.add(new RecordWriter().writeByte(SNAPSHOT).writeVarInt(3)
+                .writeString("Lab report").writeStatus(TodoStatus.PENDING.label)
+                .writeString("Exam").writeStatus(TodoStatus.COMPLETED.label)
+                .writeString("Homework 4").writeStatus(TodoStatus.PENDING.label)
+                .toByteArray());
+        records.add(new RecordWriter().writeByte(ADD).writeString("Project").toByteArray());
+        records.add(new RecordWriter().writeByte(COMPLETE).writeVarInt(0).toByteArray());
+        records.add(new RecordWriter().writeByte(DELETE).writeVarInt(2).toByteArray());
+        Files.write(file, shard(2, user, records));
+
+        TodoShards shards = new TodoShards(dir);
+        List<Todo> loaded = shards.load(user);
+        check(loaded != null && loaded.size() == 3, "version 2 shard loads");
+        if (loaded == null || loaded.size() != 3) return;
+        check(loaded.get(0).task.equals("Lab report") && done(loaded.get(0)), "completed change applied");
+        check(loaded.get(1).task.equals("Exam") && done(loaded.get(1)), "snapshot status kept");
+        check(loaded.get(2).task.equals("Project") && !done(loaded.get(2)), "delete applied");
+        check(version(file) == 2, "loading leaves the file alone");
+
+        shards.add(user, "Thesis", 1234L);
+        check(version(file) == 3, "first change rewrites the shard as version 3");
+        List<Todo> rewritten = shards.load(user);
+        check(rewritten.size() == 4, "nothing lost in the rewrite");
+        for (int i = 0; i < 3 && i < rewritten.size(); i++) {
+            check(rewritten.get(i).task.equals(loaded.get(i).task)
+                    && done(rewritten.get(i)) == done(loaded.get(i)), "task " + i + " kept");
+        }
+        check(rewritten.get(3).task.equals("Thesis") && rewritten.get(3).created == 1234L, "new task appended");
+    }
+
+    // magic, version, username, then CRC-framed records
+    private static byte[] shard(int version, String user, List<byte[]> records) {
+        byte[] name = new RecordWriter().writeString(user).toByteArray();
+        int size = 8 + name.length;
+        for (byte[] r : records) size += 8 + r.length;
+        ByteBuffer out = ByteBuffer.allocate(size).putInt(MAGIC).putInt(version).put(name);
+        for (byte[] r : records) {
+            CRC32 crc = new CRC32();
+            crc.update(r, 0, r.length);
+            out.putInt(r.length).putInt((int) crc.getValue()).put(r);
+        }
+        return out.array();
+    }
+
+    private static Path shardFile(Path dir, String user) {
+        String hash = String.format("%016x", UserIndex.hash(user));
+        return dir.resolve(hash.substring(0, 2)).resolve(hash + ".todos");
+    }
+
+    private static int version(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+            in.readInt();
+            return in.readInt();
+        }
+    }
+
+    private static boolean done(Todo t) {
+        return TodoStatus.COMPLETED.label.equals(t.status);
+    }
+
+    private static void check(boolean ok, String what) {
+        if (!ok) {
+            failures++;
+            System.out.println("FAILED: " + what);
+        }
+    }
+}
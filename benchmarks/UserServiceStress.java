@@ -0,0 +1,201 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Many threads hammering one UserService, then checks that nothing was lost or reordered:
+//
+//   java -cp out UserServiceStress [-threads 16] [-users 8] [-ops 500]
+//
+// 1. every thread registers every user at once: exactly one registration per name wins
+// 2. every thread logs in to every user, so each account has -threads sessions
+// 3. the threads add, complete and delete todos on random accounts through their sessions
+// 4. each list must hold exactly the adds minus the deletes, no duplicates, and match
+//    what replaying its shard gives (the disk saw the same order as memory)
+// 5. all sessions log out at once; reopening the files gives the same lists again
+//
+// Password hashing is turned down to 1000 iterations unless -Dstudenthelper.hash.iterations
+// is given. Exits with status 1 if any check fails.
+public class UserServiceStress {
+
+    private static final char[] PASSWORD = "secret".toCharArray();
+
+    private static int failures;
+
+    public static void main(String[] args) throws Exception {
+        if (System.getProperty("studenthelper.hash.iterations") == null) {
+            System.setProperty("studenthelper.hash.iterations", "1000");
+        }
+        int threads = Math.max(8, 2 * Runtime.getRuntime().availableProcessors());
+        int users = 8;
+        int ops = 500;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-threads": threads = Integer.parseInt(args[++i]); break;
+                case "-users": users = Integer.parseInt(args[++i]); break;
+                case "-ops": ops = Integer.parseInt(args[++i]); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        Path dir = Files.createTempDirectory("stress-users");
+        try {
+            run(dir, threads, users, ops);
+        } finally {
+            try {
+                TempDirs.deleteTree(dir);
+            } catch (IOException e) {
+                System.err.println("Cannot delete " + dir + ": " + e);
+            }
+        }
+        System.out.println(failures == 0 ? "OK" : failures + " check(s) FAILED");
+        if (failures > 0) System.exit(1);
+    }
+
+    private static void run(Path dir, int threads, int users, int ops) throws Exception {
+        // daemon threads, so an exception in a worker does not leave the JVM hanging
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "stress");
+            t.setDaemon(true);
+            return t;
+        });
+        String[] names = new String[users];
+        for (int u = 0; u < users; u++) names[u] = "user" + u;
+
+        try {
+            stress(pool, dir, threads, names, ops);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static void stress(ExecutorService pool, Path dir, int threads, String[] names, int ops) throws Exception {
+        int users = names.length;
+        UserService service = open(dir);
+
+        // 1. registration race
+        AtomicInteger registered = new AtomicInteger();
+        all(pool, threads, t -> {
+            for (String name : names) {
+                if (service.register(name, PASSWORD.clone(), name + "@tuke.sk", "id-" + name)) registered.incrementAndGet();
+            }
+        });
+        check(registered.get() == users, "registrations: " + registered.get() + " of " + users + " names");
+
+        // 2. login storm, plus a wrong password for each user
+        AccountService.Session[][] sessions = new AccountService.Session[threads][users];
+        all(pool, threads, t -> {
+            for (int u = 0; u < users; u++) sessions[t][u] = service.login(names[u], PASSWORD.clone());
+        });
+        for (int u = 0; u < users; u++) {
+            check(service.login(names[u], "wrong".toCharArray()) == null, "wrong password rejected for " + names[u]);
+        }
+        for (AccountService.Session[] row : sessions) {
+            for (AccountService.Session s : row) check(s != null, "login succeeded");
+        }
+
+        // 3. mixed edits
+        AtomicInteger[] adds = counters(users), deletes = counters(users);
+        long start = System.nanoTime();
+        all(pool, threads, t -> {
+            Random random = new Random(t);
+            for (int i = 0; i < ops; i++) {
+                int u = random.nextInt(users);
+                AccountService.Session s = sessions[t][u];
+                int op = random.nextInt(4);
+                if (op < 2) {
+                    service.add(s, "t" + t + "-" + i, System.currentTimeMillis());
+                    adds[u].incrementAndGet();
+                } else {
+                    // the index may be stale by the time the call runs: the service re-checks it
+                    int size = service.todos(s).size();
+                    int index = size == 0 ? 0 : random.nextInt(size);
+                    if (op == 2) service.complete(s, index, System.currentTimeMillis());
+                    else if (service.delete(s, index)) deletes[u].incrementAndGet();
+                }
+            }
+        });
+        long elapsed = System.nanoTime() - start;
+        System.out.printf(Locale.ROOT, "%d threads, %d users: %d edits in %d ms (%.0f ops/s)%n", threads, users,
+                (long) threads * ops, elapsed / 1_000_000, threads * ops / (elapsed / 1e9));
+
+        // 4. contents
+        TodoShards shards = new TodoShards(dir.resolve("todos"));
+        Map<String, List<Todo>> expected = new HashMap<>();
+        for (int u = 0; u < users; u++) {
+            List<Todo> todos = service.todos(sessions[0][u]);
+            expected.put(names[u], todos);
+            check(todos.size() == adds[u].get() - deletes[u].get(), names[u] + ": " + todos.size()
+                    + " todos, expected " + adds[u].get() + " adds - " + deletes[u].get() + " deletes");
+            Set<String> seen = new HashSet<>();
+            for (Todo t : todos) check(seen.add(t.task), names[u] + ": duplicate task " + t.task);
+            check(same(todos, shards.load(names[u])), names[u] + ": shard replay matches memory");
+        }
+
+        // 5. logout storm, then reopen from disk
+        all(pool, threads, t -> {
+            for (AccountService.Session s : sessions[t]) service.logout(s);
+        });
+        check(service.loggedIn() == 0, "all accounts logged out");
+        service.close();
+
+        UserService reopened = open(dir);
+        try {
+            for (String name : names) {
+                AccountService.Session s = reopened.login(name, PASSWORD.clone());
+                check(s != null && same(expected.get(name), reopened.todos(s)), name + ": reopened lists match");
+            }
+        } finally {
+            reopened.close();
+        }
+    }
+
+    private interface Work {
+        void run(int thread) throws Exception;
+    }
+
+    // Runs work on every thread at once and waits for all of them
+    private static void all(ExecutorService pool, int threads, Work work) throws Exception {
+        CountDownLatch go = new CountDownLatch(1);
+        List<Future<?>> done = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            done.add(pool.submit(() -> {
+                go.await();
+                work.run(thread);
+                return null;
+            }));
+        }
+        go.countDown();
+        for (Future<?> f : done) f.get();
+    }
+
+    private static UserService open(Path dir) throws IOException {
+        UserStore store = UserStore.open(dir.resolve("users.log"), dir.resolve("users.idx"), dir.resolve("users.dat"));
+        return new UserService(store, new TodoShards(dir.resolve("todos")));
+    }
+
+    private static boolean same(List<Todo> a, List<Todo> b) {
+        if (a == null || b == null || a.size() != b.size()) return false;
+        for (int i = 0; i < a.size(); i++) {
+            Todo x = a.get(i), y = b.get(i);
+            if (!x.task.equals(y.task) || !x.status.equals(y.status) || x.completed != y.completed) return false;
+        }
+        return true;
+    }
+
+    private static AtomicInteger[] counters(int n) {
+        AtomicInteger[] c = new AtomicInteger[n];
+        for (int i = 0; i < n; i++) c[i] = new AtomicInteger();
+        return c;
+    }
+
+    private static void check(boolean ok, String what) {
+        if (!ok) {
+            failures++;
+            System.out.println("FAILED: " + what);
+        }
+    }
+}
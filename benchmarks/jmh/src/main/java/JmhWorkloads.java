@@ -0,0 +1,363 @@
+import jmh.Workload;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+
+// The benchmarked operations, set up once per trial for the JMH classes in package jmh
+// (see jmh.Workload for why they live here). JMH takes care of warmup, forks and
+// consuming the results.
+final class JmhWorkloads {
+
+    private static final int PORT = 12360;
+
+    private JmhWorkloads() {
+    }
+
+    static Workload create(String name, String param) throws Exception {
+        switch (name) {
+            case "store.open":
+            case "store.load":
+            case "store.register":
+            case "store.logout":
+                return userStore(name, Integer.parseInt(param));
+            case "shards.load":
+            case "stats.update":
+            case "stats.recount":
+            case "stats.addRemove":
+            case "search.query":
+                return todos(name, Integer.parseInt(param));
+            case "paint.statsPanel":
+            case "paint.statsPanelChanging":
+            case "paint.completionChart":
+                return paint(name);
+            case "server.echo":
+            case "server.get":
+                return server(name, param);
+            case "server.pipeline":
+                return pipeline(param);
+            default:
+                throw new IllegalArgumentException("Unknown benchmark " + name);
+        }
+    }
+
+    // ===== Persistence =====
+
+    private static Workload userStore(String name, int users) throws Exception {
+        Random random = new Random(42);
+        Path dir = Files.createTempDirectory("jmh-users");
+        Path journal = dir.resolve("users.log"), index = dir.resolve("users.idx"), legacy = dir.resolve("users.dat");
+        try (UserStore store = UserStore.open(journal, index, legacy)) {
+            CompletableFuture<Void> last = null;
+            for (int i = 0; i < users; i++) last = store.register(user("user" + i));
+            if (last != null) last.join();
+        }
+
+        if (name.equals("store.open")) {
+            return cleanup(() -> {
+                UserStore s = UserStore.open(journal, index, legacy);
+                s.close();
+                return s;
+            }, () -> deleteTree(dir));
+        }
+
+        UserStore store = UserStore.open(journal, index, legacy);
+        AutoCloseable close = () -> {
+            store.close();
+            deleteTree(dir);
+        };
+        switch (name) {
+            case "store.load":
+                return cleanup(() -> store.load("user" + random.nextInt(users)), close);
+            case "store.register": {
+                int[] next = {0};
+                return cleanup(() -> {
+                    CompletableFuture<Void> written = store.register(user("new" + next[0]++));
+                    written.join();
+                    return written;
+                }, close);
+            }
+            default:
+                return cleanup(() -> {
+                    User u = store.load("user" + random.nextInt(users));
+                    store.beginSession(u.username);
+                    CompletableFuture<Void> written = store.logout(u);
+                    written.join();
+                    return written;
+                }, close);
+        }
+    }
+
+    private static User user(String name) {
+        return new User(name, "pbkdf2$1000$c2FsdA$aGFzaA", name + "@student.tuke.sk", "ID" + name.hashCode());
+    }
+
+    // ===== Todos =====
+
+    private static Workload todos(String name, int count) throws Exception {
+        List<Todo> list = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            list.add(new Todo("Task " + i + " lab report " + (i % 97),
+                    i % 3 == 0 ? TodoStatus.COMPLETED.label : TodoStatus.PENDING.label));
+        }
+
+        if (name.equals("shards.load")) {
+            Path dir = Files.createTempDirectory("jmh-todos");
+            TodoShards shards = new TodoShards(dir);
+            shards.save("bench", list);
+            return cleanup(() -> shards.load("bench"), () -> deleteTree(dir));
+        }
+
+        TodoTableModel model = new TodoTableModel();
+        model.setTodos(list);
+        switch (name) {
+            case "stats.update": {
+                TaskStatsPanel panel = new TaskStatsPanel();
+                return () -> {
+                    panel.setData(model.pendingCount(), model.completedCount());
+                    return panel;
+                };
+            }
+            case "stats.recount":
+                return model::verifyCounts;
+            case "stats.addRemove": {
+                int[] events = {0};
+                model.addTableModelListener(e -> events[0]++);
+                return () -> {
+                    model.add(new Todo("Extra task", TodoStatus.PENDING.label));
+                    model.remove(model.getRowCount() - 1);
+                    return events[0];
+                };
+            }
+            default:
+                return () -> model.searchIndex().search("lab rep 4");
+        }
+    }
+
+    // ===== Painting =====
+
+    private static Workload paint(String name) {
+        BufferedImage image = new BufferedImage(800, 600, BufferedImage.TYPE_INT_RGB);
+        if (name.equals("paint.completionChart")) {
+            // three years of completions, one bucket per pixel column
+            Random random = new Random(42);
+            List<Todo> done = new ArrayList<>();
+            long now = System.currentTimeMillis(), span = 3 * 365 * 86_400_000L;
+            for (int k = 0; k < 1_000_000; k++) {
+                long at = now - (long) (random.nextDouble() * span);
+                done.add(new Todo("Task " + k, TodoStatus.COMPLETED.label, at, at));
+            }
+            CompletionHistory history = new CompletionHistory();
+            history.rebuild(done);
+            CompletionChartPanel chart = new CompletionChartPanel();
+            chart.setSize(800, 600);
+            chart.setHistory(history);
+            return () -> {
+                Graphics2D g = image.createGraphics();
+                try {
+                    chart.paint(g);
+                } finally {
+                    g.dispose();
+                }
+                return image;
+            };
+        }
+
+        TaskStatsPanel panel = new TaskStatsPanel();
+        panel.setSize(800, 600);
+        panel.setData(1234, 5678);
+        boolean changing = name.equals("paint.statsPanelChanging");
+        int[] i = {0};
+        return () -> {
+            if (changing) panel.setData(i[0]++ % 1000, 500);
+            Graphics2D g = image.createGraphics();
+            try {
+                panel.paint(g);
+            } finally {
+                g.dispose();
+            }
+            return image;
+        };
+    }
+
+    // ===== cv9 SimpleServer =====
+
+    private static Workload server(String name, String mode) throws Exception {
+        if (mode.equals("virtual") && !ThreadedEchoServer.virtualThreadsAvailable()) {
+            throw new UnsupportedOperationException("Virtual threads need Java 21, running on " + Runtime.version());
+        }
+        Path root = Files.createTempDirectory("jmh-files");
+        byte[] data = new byte[16 << 20];
+        new Random(42).nextBytes(data);
+        Files.write(root.resolve("file.bin"), data);
+
+        Server server = Server.start(mode, root);
+        Socket socket = server.socket;
+        AutoCloseable close = () -> {
+            server.close();
+            deleteTree(root);
+        };
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+        OutputStream out = socket.getOutputStream();
+        if (name.equals("server.echo")) {
+            BufferedReader lines = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            byte[] ping = "ping\n".getBytes(StandardCharsets.UTF_8);
+            return cleanup(() -> {
+                out.write(ping);
+                return lines.readLine();
+            }, close);
+        }
+        byte[] request = "GET file.bin\n".getBytes(StandardCharsets.UTF_8);
+        byte[] buffer = new byte[1 << 16];
+        return cleanup(() -> {
+            out.write(request);
+            StringBuilder header = new StringBuilder();
+            for (int c; (c = in.read()) != '\n'; ) header.append((char) c);
+            long left = Long.parseLong(header.toString().split(" ")[2]);
+            while (left > 0) left -= in.read(buffer, 0, (int) Math.min(buffer.length, left));
+            return header;
+        }, close);
+    }
+
+    // PIPELINE_DEPTH requests sent back to back, then all the replies read, on the nio
+    // server: text lines against binary frames (one op = the whole batch)
+    private static final int PIPELINE_DEPTH = 64;
+
+    private static Workload pipeline(String protocol) throws Exception {
+        Server server = Server.start("nio", null);
+        Socket socket = server.socket;
+        AutoCloseable close = server;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+        byte[] ping = "ping".getBytes(StandardCharsets.UTF_8);
+
+        if (protocol.equals("text")) {
+            BufferedReader lines = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            return cleanup(() -> {
+                for (int i = 0; i < PIPELINE_DEPTH; i++) {
+                    out.write(ping);
+                    out.write('\n');
+                }
+                out.flush();
+                String last = null;
+                for (int i = 0; i < PIPELINE_DEPTH; i++) last = lines.readLine();
+                return last;
+            }, close);
+        }
+
+        out.write(NioEchoServer.HELLO);
+        out.flush();
+        in.readFully(new byte[NioEchoServer.HELLO.length]);
+        byte[] reply = new byte[64];
+        int[] id = {0};
+        return cleanup(() -> {
+            for (int i = 0; i < PIPELINE_DEPTH; i++) {
+                out.writeInt(ping.length);
+                out.writeInt(id[0]++);
+                out.write(ping);
+            }
+            out.flush();
+            int last = 0;
+            for (int i = 0; i < PIPELINE_DEPTH; i++) {
+                int length = in.readInt();
+                last = in.readInt();
+                in.readFully(reply, 0, length);
+            }
+            return last;
+        }, close);
+    }
+
+    // SimpleServer running on its own thread with its console output discarded, plus one
+    // connection to it; root is the folder GET serves from, if any
+    private static final class Server implements AutoCloseable {
+        final Socket socket;
+        private final Thread thread;
+        private final PrintStream console;
+
+        private Server(Socket socket, Thread thread, PrintStream console) {
+            this.socket = socket;
+            this.thread = thread;
+            this.console = console;
+        }
+
+        static Server start(String mode, Path root) throws Exception {
+            List<String> args = new ArrayList<>(List.of("-mode", mode, "-port", String.valueOf(PORT), "-stats", "0"));
+            if (root != null) args.addAll(List.of("-root", root.toString()));
+            PrintStream console = System.out;
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            Thread thread = new Thread(() -> SimpleServer.main(args.toArray(new String[0])), "simple-server");
+            thread.setDaemon(true);
+            thread.start();
+            try {
+                Socket socket = connect("localhost", PORT);
+                socket.setTcpNoDelay(true);
+                return new Server(socket, thread, console);
+            } catch (Exception e) {
+                System.setOut(console);
+                throw e;
+            }
+        }
+
+        @Override
+        public void close() throws Exception {
+            socket.close();
+            thread.interrupt(); // the blocking server is done once its client leaves
+            thread.join(5_000);
+            System.setOut(console);
+        }
+    }
+
+    private static Socket connect(String host, int port) throws IOException, InterruptedException {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return new Socket(host, port);
+            } catch (IOException e) {
+                if (attempt >= 50) throw e;
+                Thread.sleep(100);
+            }
+        }
+    }
+
+    private static void deleteTree(Path dir) throws IOException {
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path d, IOException e) throws IOException {
+                Files.delete(d);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private interface Op {
+        Object run() throws Exception;
+    }
+
+    private static Workload cleanup(Op op, AutoCloseable close) {
+        return new Workload() {
+            @Override
+            public Object run() throws Exception {
+                return op.run();
+            }
+
+            @Override
+            public void close() throws Exception {
+                close.close();
+            }
+        };
+    }
+}
@@ -0,0 +1,40 @@
+package jmh;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Painting the statistics panel and the completion chart into an 800x600 image.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Benchmark)
+public class PaintBenchmark {
+
+    @Param({"paint.statsPanel", "paint.statsPanelChanging", "paint.completionChart"})
+    public String op;
+
+    @Param({"800x600"})
+    public String size;
+
+    private Workload workload;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        workload = Workload.create(op, size);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        workload.close();
+    }
+
+    @Benchmark
+    public Object run() throws Exception {
+        return workload.run();
+    }
+}
@@ -0,0 +1,38 @@
+package jmh;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 64 echo requests sent back to back to the nio server before any reply is read, as text
+ * lines and as binary frames. One operation is the whole batch.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Benchmark)
+public class PipelineBenchmark {
+
+    @Param({"text", "binary"})
+    public String protocol;
+
+    private Workload workload;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        workload = Workload.create("server.pipeline", protocol);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        workload.close();
+    }
+
+    @Benchmark
+    public Object run() throws Exception {
+        return workload.run();
+    }
+}
@@ -0,0 +1,41 @@
+package jmh;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * cv9 SimpleServer over loopback in each mode: an echo round trip, and a 16 MB file fetched
+ * with GET.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Benchmark)
+public class ServerBenchmark {
+
+    @Param({"server.echo", "server.get"})
+    public String op;
+
+    @Param({"blocking", "nio", "threads", "virtual"})
+    public String mode;
+
+    private Workload workload;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        workload = Workload.create(op, mode);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        workload.close();
+    }
+
+    @Benchmark
+    public Object run() throws Exception {
+        return workload.run();
+    }
+}
@@ -0,0 +1,40 @@
+package jmh;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * UserStore: what loadUsers, login, register and logout do; param is the number of users.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Benchmark)
+public class StoreBenchmark {
+
+    @Param({"store.open", "store.load", "store.register", "store.logout"})
+    public String op;
+
+    @Param({"1000", "100000", "1000000"})
+    public String size;
+
+    private Workload workload;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        workload = Workload.create(op, size);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        workload.close();
+    }
+
+    @Benchmark
+    public Object run() throws Exception {
+        return workload.run();
+    }
+}
@@ -0,0 +1,33 @@
+package jmh;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * One benchmarked operation, set up and ready to be called in a loop.
+ * JMH only accepts benchmark classes in a named package, and those cannot refer to the
+ * app's classes in the default package, so the operations are built by JmhWorkloads
+ * (default package) and handed over through this interface.
+ */
+public interface Workload extends AutoCloseable {
+
+    // The result goes to JMH's blackhole, so the JIT cannot drop the work
+    Object run() throws Exception;
+
+    @Override
+    default void close() throws Exception {
+    }
+
+    // name is the operation ("store.load", ...); param is the data size, the server mode
+    // or the pipeline protocol
+    static Workload create(String name, String param) throws Exception {
+        Method create = Class.forName("JmhWorkloads").getDeclaredMethod("create", String.class, String.class);
+        create.setAccessible(true);
+        try {
+            return (Workload) create.invoke(null, name, param);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof Exception) throw (Exception) e.getCause();
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The GET command: hands out the files under one root directory (course materials,
+ * exported todo lists).
+ *
+ *   GET <path> [<first>-[<last>]]
+ *
+ * is answered with the text line "OK <first> <count> <size>" and then count raw bytes of
+ * the file from offset first, or with "ERROR <reason>". The optional range is inclusive,
+ * like HTTP's; "GET notes.pdf 1048576-" resumes a download after its first megabyte.
+ * The bytes go from the page cache to the socket with FileChannel.transferTo (sendfile
+ * on Linux), never through a Java array.
+ */
+class FileServer {
+
+    private static final String COMMAND = "GET ";
+
+    private final Path root;
+
+    FileServer(Path root) throws IOException {
+        this.root = root.toRealPath();
+        if (!Files.isDirectory(this.root)) throw new IOException(root + " is not a directory");
+    }
+
+    static boolean isGet(String line) {
+        return line.startsWith(COMMAND);
+    }
+
+    // The requested part of the file, or an error to send back; never throws for a bad request
+    Transfer open(String request) {
+        String path = request.substring(COMMAND.length()).trim();
+        long first = 0, last = Long.MAX_VALUE;
+        int space = path.lastIndexOf(' ');
+        if (space > 0 && path.substring(space + 1).matches("\\d+-\\d*")) {
+            String range = path.substring(space + 1);
+            path = path.substring(0, space).trim();
+            int dash = range.indexOf('-');
+            try {
+                first = Long.parseLong(range.substring(0, dash));
+                if (dash < range.length() - 1) last = Long.parseLong(range.substring(dash + 1));
+            } catch (NumberFormatException e) {
+                return Transfer.error("bad range");
+            }
+            if (last < first) return Transfer.error("bad range");
+        }
+
+        Path file = resolve(path);
+        if (file == null) return Transfer.error("not found");
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            long size = channel.size();
+            if (first > size) {
+                channel.close();
+                return Transfer.error("range starts after the end of the file (" + size + " bytes)");
+            }
+            long count = Math.min(last, size - 1) - first + 1;
+            String header = "OK " + first + " " + count + " " + size + "\n";
+            if (count == 0) {
+                channel.close(); // an empty file, or a range starting at its end: nothing to send
+                return new Transfer(header, null, first, 0);
+            }
+            return new Transfer(header, channel, first, count);
+        } catch (IOException e) {
+            try {
+                if (channel != null) channel.close();
+            } catch (IOException ignored) {
+            }
+            return Transfer.error("cannot read the file");
+        }
+    }
+
+    // A regular file under the root, following symlinks only if they stay inside it
+    private Path resolve(String path) {
+        try {
+            Path p = root.resolve(path).normalize();
+            if (path.isEmpty() || !p.startsWith(root)) return null;
+            p = p.toRealPath();
+            return p.startsWith(root) && Files.isRegularFile(p) ? p : null;
+        } catch (InvalidPathException | IOException e) {
+            return null;
+        }
+    }
+
+    static final class Transfer {
+        final String header;
+        private final FileChannel file; // null for an error or an empty range
+        private long position;
+        private final long end;
+
+        private Transfer(String header, FileChannel file, long position, long count) {
+            this.header = header;
+            this.file = file;
+            this.position = position;
+            this.end = position + count;
+        }
+
+        static Transfer error(String reason) {
+            return new Transfer("ERROR " + reason + "\n", null, 0, 0);
+        }
+
+        boolean isDone() {
+            return file == null || position >= end;
+        }
+
+        // Sends what the target takes now (all of it if it blocks) and returns how many
+        // bytes that was; the file is closed once isDone()
+        long sendTo(WritableByteChannel target) throws IOException {
+            long sent = 0;
+            while (!isDone()) {
+                long n = file.transferTo(position, end - position, target);
+                if (n == 0) {
+                    if (position >= file.size()) throw new IOException("File shrank while it was being sent");
+                    return sent; // the socket is full
+                }
+                position += n;
+                sent += n;
+            }
+            close();
+            return sent;
+        }
+
+        void close() {
+            try {
+                if (file != null) file.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
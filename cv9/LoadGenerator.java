@@ -0,0 +1,366 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.locks.LockSupport;
+
+// Drives a SimpleServer (any mode) over loopback and reports latency and throughput:
+//
+//   java LoadGenerator [-host localhost] [-port 12345] [-connections 16] [-threads 1]
+//                      [-rate 0] [-interval 0] [-depth 1] [-duration 10] [-warmup 2]
+//                      [-protocol text|binary] [-message ping]
+//
+// -rate 0 is closed loop: each connection keeps -depth requests outstanding and sends the
+// next one as soon as a reply comes in. Latency is measured from the actual send. When
+// the server stalls, the requests that would have been sent meanwhile never are
+// (coordinated omission). With -interval MS, the interval a client really needs its
+// requests served at, the report also gives the latencies corrected for that; without
+// it, use the open loop to see them.
+//
+// -rate R is open loop: R requests per second in total, spread evenly over the
+// connections and sent on schedule whether or not earlier replies are back. Latency is
+// measured from when a request was due, not when it went out, so a stall on either side
+// shows in full. Requests still unanswered at the end count with their age at the end.
+//
+// Connections are split over -threads selector loops. Only the replies after the warmup
+// count. Thousands of connections need a raised open-files limit (ulimit -n).
+public class LoadGenerator {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final String host;
+    private final int port;
+    private final int connections, threads, depth;
+    private final double rate;
+    private final boolean binary;
+    private final byte[] message;
+    private final long expectedInterval;
+    private final long warmupNanos, durationNanos;
+
+    private LoadGenerator(String host, int port, int connections, int threads, double rate, double intervalMillis,
+            int depth, boolean binary, String message, double warmupSeconds, double durationSeconds) {
+        this.host = host;
+        this.port = port;
+        this.connections = connections;
+        this.threads = Math.min(threads, connections);
+        this.rate = rate;
+        this.expectedInterval = (long) (intervalMillis * 1e6);
+        this.depth = depth;
+        this.binary = binary;
+        this.message = message.getBytes(StandardCharsets.UTF_8);
+        this.warmupNanos = (long) (warmupSeconds * 1e9);
+        this.durationNanos = (long) (durationSeconds * 1e9);
+    }
+
+    public static void main(String[] args) throws Exception {
+        String host = "localhost";
+        int port = 12345;
+        int connections = 16;
+        int threads = 1;
+        double rate = 0, interval = 0;
+        int depth = 1;
+        double duration = 10, warmup = 2;
+        String protocol = "text";
+        String message = "ping";
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-host": host = args[++i]; break;
+                case "-port": port = Integer.parseInt(args[++i]); break;
+                case "-connections": connections = Integer.parseInt(args[++i]); break;
+                case "-threads": threads = Integer.parseInt(args[++i]); break;
+                case "-rate": rate = Double.parseDouble(args[++i]); break;
+                case "-interval": interval = Double.parseDouble(args[++i]); break;
+                case "-depth": depth = Integer.parseInt(args[++i]); break;
+                case "-duration": duration = Double.parseDouble(args[++i]); break;
+                case "-warmup": warmup = Double.parseDouble(args[++i]); break;
+                case "-protocol": protocol = args[++i]; break;
+                case "-message": message = args[++i]; break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        if (!protocol.equals("text") && !protocol.equals("binary")) {
+            throw new IllegalArgumentException("Unknown protocol " + protocol);
+        }
+        if (message.indexOf('\n') >= 0) throw new IllegalArgumentException("The message must be one line");
+        if (rate > 0 && interval > 0) {
+            throw new IllegalArgumentException("-interval is for the closed loop; the open loop sends on its own schedule");
+        }
+
+        new LoadGenerator(host, port, connections, threads, rate, interval, depth, protocol.equals("binary"),
+                message, warmup, duration).run();
+    }
+
+    private void run() throws Exception {
+        Worker[] workers = new Worker[threads];
+        for (int w = 0; w < threads; w++) {
+            workers[w] = new Worker(connections / threads + (w < connections % threads ? 1 : 0));
+        }
+        for (Worker worker : workers) worker.connect();
+
+        // everyone starts together, a little after the last connection is up
+        long start = System.nanoTime() + 100_000_000;
+        Thread[] running = new Thread[threads];
+        for (int w = 0; w < threads; w++) {
+            Worker worker = workers[w];
+            // in the open loop, the workers' schedules interleave: worker w sends at w / rate + k * threads / rate
+            long phase = rate > 0 ? (long) (w * 1e9 / rate) : 0;
+            running[w] = new Thread(() -> worker.run(start, phase), "load-" + w);
+            running[w].start();
+        }
+        for (Thread t : running) t.join();
+
+        LogHistogram latency = new LogHistogram(), corrected = new LogHistogram();
+        long replies = 0, errors = 0, unanswered = 0;
+        for (Worker worker : workers) {
+            worker.latency.addTo(latency);
+            worker.corrected.addTo(corrected);
+            replies += worker.replies;
+            errors += worker.errors;
+            unanswered += worker.unanswered;
+        }
+
+        double seconds = durationNanos / 1e9;
+        System.out.printf(Locale.ROOT, "%s loop, %s, %d connections on %d thread(s), %.1f s after %.1f s warmup%n",
+                rate > 0 ? "Open" : "Closed", binary ? "binary" : "text", connections, threads, seconds,
+                warmupNanos / 1e9);
+        if (rate > 0) System.out.printf(Locale.ROOT, "target     %.0f req/s%n", rate);
+        System.out.printf(Locale.ROOT, "achieved   %.0f req/s (%d replies, %d unanswered, %d errors)%n",
+                replies / seconds, replies, unanswered, errors);
+        if (rate > 0) {
+            System.out.println("latency    " + corrected.summary() + "   (from the scheduled send)");
+        } else {
+            System.out.println("latency    " + latency.summary() + "   (from the actual send)");
+            if (expectedInterval > 0) {
+                System.out.printf(Locale.ROOT, "corrected  %s   (expected interval %.3fms)%n", corrected.summary(),
+                        expectedInterval / 1e6);
+            } else {
+                System.out.println("corrected  -   (give -interval, or use -rate for latencies free of coordinated omission)");
+            }
+        }
+    }
+
+    // One selector loop over a share of the connections
+    private final class Worker {
+        final Selector selector;
+        final Connection[] conns;
+        final LogHistogram latency = new LogHistogram(), corrected = new LogHistogram();
+        long replies, errors, unanswered;
+        long warmupEnd, end;
+
+        Worker(int count) throws IOException {
+            selector = Selector.open();
+            conns = new Connection[count];
+        }
+
+        void connect() throws IOException {
+            for (int i = 0; i < conns.length; i++) {
+                SocketChannel channel = SocketChannel.open(new InetSocketAddress(host, port));
+                channel.socket().setTcpNoDelay(true);
+                if (binary) handshake(channel);
+                channel.configureBlocking(false);
+                conns[i] = new Connection(channel);
+                conns[i].key = channel.register(selector, SelectionKey.OP_READ, conns[i]);
+            }
+        }
+
+        private void handshake(SocketChannel channel) throws IOException {
+            channel.write(ByteBuffer.wrap(NioEchoServer.HELLO));
+            ByteBuffer reply = ByteBuffer.allocate(NioEchoServer.HELLO.length);
+            while (reply.hasRemaining()) {
+                if (channel.read(reply) < 0) throw new IOException("The server closed the connection on HELLO");
+            }
+            if (!reply.flip().equals(ByteBuffer.wrap(NioEchoServer.HELLO))) {
+                throw new IOException("The server does not speak the binary protocol (use -mode nio)");
+            }
+        }
+
+        void run(long start, long phase) {
+            warmupEnd = start + warmupNanos;
+            end = warmupEnd + durationNanos;
+            boolean open = rate > 0;
+            long interval = open ? (long) (1e9 * threads / rate) : 0;
+            long nextSend = start + phase;
+            int next = 0;
+            if (open) startTicker(start + phase, interval);
+            try {
+                while (System.nanoTime() < start) Thread.sleep(1);
+                if (!open) {
+                    for (Connection c : conns) {
+                        for (int d = 0; d < depth; d++) c.send(start);
+                    }
+                }
+                long now;
+                while ((now = System.nanoTime()) < end) {
+                    if (open) {
+                        for (; nextSend <= now && nextSend < end; nextSend += interval) {
+                            conns[next].send(nextSend);
+                            next = (next + 1) % conns.length;
+                        }
+                    }
+                    long wait = (open ? Math.min(nextSend, end) : end) - System.nanoTime();
+                    if (wait > 0) selector.select(Math.max(1, wait / 1_000_000)); // the ticker wakes it on time
+                    else selector.selectNow();
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        Connection c = (Connection) key.attachment();
+                        try {
+                            if (key.isValid() && key.isReadable()) c.read(open);
+                            if (key.isValid() && key.isWritable()) c.flush();
+                        } catch (IOException e) {
+                            errors++;
+                            c.close();
+                        }
+                    }
+                }
+                // what is still outstanding took at least this long
+                for (Connection c : conns) {
+                    for (int i = 0; i < c.pending; i++) {
+                        long sent = c.sent[(c.head + i) % c.sent.length];
+                        if (sent >= warmupEnd) {
+                            unanswered++;
+                            corrected.record(end - sent);
+                        }
+                    }
+                    c.close();
+                }
+                selector.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+                errors++;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // select() only times out in whole milliseconds, and spinning would take the CPU
+        // from the server on a small machine: a thread that wakes the selector whenever a
+        // send is due, with parkNanos precision
+        private void startTicker(long first, long interval) {
+            Thread ticker = new Thread(() -> {
+                for (long due = first; due < end; due += interval) {
+                    for (long wait; (wait = due - System.nanoTime()) > 0; ) LockSupport.parkNanos(wait);
+                    selector.wakeup();
+                }
+            }, "load-ticker");
+            ticker.setDaemon(true);
+            ticker.start();
+        }
+
+        void replied(long sentAt, long now) {
+            if (now < warmupEnd) return;
+            long nanos = now - sentAt;
+            if (rate > 0) {
+                corrected.record(nanos);
+            } else {
+                latency.record(nanos);
+                if (expectedInterval > 0) corrected.record(nanos, expectedInterval);
+            }
+            replies++;
+        }
+
+        private final class Connection {
+            final SocketChannel channel;
+            SelectionKey key;
+            ByteBuffer in = ByteBuffer.allocate(BUFFER_SIZE);
+            ByteBuffer out = ByteBuffer.allocate(BUFFER_SIZE);
+            // send times of the requests not answered yet, oldest first (replies come in order)
+            long[] sent = new long[16];
+            int head, pending;
+            int nextId, expectedId;
+
+            Connection(SocketChannel channel) {
+                this.channel = channel;
+            }
+
+            // sentAt: when the request was due (open loop) or is sent (closed loop)
+            void send(long sentAt) throws IOException {
+                if (!channel.isOpen()) return;
+                int size = binary ? NioEchoServer.FRAME_HEADER + message.length : message.length + 1;
+                if (out.remaining() < size) out = grow(out, Math.max(out.capacity() * 2, out.position() + size));
+                if (binary) out.putInt(message.length).putInt(nextId++).put(message);
+                else out.put(message).put((byte) '\n');
+
+                if (pending == sent.length) {
+                    long[] bigger = new long[sent.length * 2];
+                    for (int i = 0; i < pending; i++) bigger[i] = sent[(head + i) % sent.length];
+                    sent = bigger;
+                    head = 0;
+                }
+                sent[(head + pending++) % sent.length] = sentAt;
+                flush();
+            }
+
+            void flush() throws IOException {
+                out.flip();
+                channel.write(out);
+                out.compact();
+                key.interestOps(out.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+            }
+
+            void read(boolean open) throws IOException {
+                if (channel.read(in) < 0) throw new IOException("The server closed the connection");
+                long now = System.nanoTime();
+                in.flip();
+                int answered = binary ? frames() : lines();
+                in.compact();
+                if (!in.hasRemaining()) in = grow(in, in.capacity() * 2);
+
+                for (int i = 0; i < answered; i++) {
+                    if (pending == 0) {
+                        errors++; // a reply to nothing
+                        continue;
+                    }
+                    replied(sent[head], now);
+                    head = (head + 1) % sent.length;
+                    pending--;
+                    if (!open && now < end) send(now);
+                }
+            }
+
+            private int lines() {
+                int count = 0;
+                for (int i = in.position(); i < in.limit(); i++) {
+                    if (in.get(i) == '\n') {
+                        in.position(i + 1);
+                        count++;
+                    }
+                }
+                return count;
+            }
+
+            private int frames() {
+                int count = 0;
+                while (in.remaining() >= NioEchoServer.FRAME_HEADER) {
+                    int length = in.getInt(in.position());
+                    if (in.remaining() < NioEchoServer.FRAME_HEADER + length) break;
+                    if (in.getInt(in.position() + 4) != expectedId) errors++;
+                    expectedId++;
+                    in.position(in.position() + NioEchoServer.FRAME_HEADER + length);
+                    count++;
+                }
+                return count;
+            }
+
+            void close() {
+                key.cancel();
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private static ByteBuffer grow(ByteBuffer buffer, int capacity) {
+        ByteBuffer bigger = ByteBuffer.allocate(capacity);
+        buffer.flip();
+        return bigger.put(buffer);
+    }
+}
@@ -0,0 +1,109 @@
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Log-linear histogram of durations in nanoseconds. Each power of two is split into
+ * 16 linear steps, so a recorded value is within ~6% of its bucket bound. Recording is
+ * a few atomic adds, with no lock and no allocation, and is safe from any thread.
+ */
+class LogHistogram {
+
+    private static final int SUB_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    // rows up to 2^45 ns (~9.8 h); anything longer is counted in the very last bucket
+    private static final int MAX_EXPONENT = 44;
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 2) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        counts.incrementAndGet(bucket(nanos));
+        total.incrementAndGet();
+        sum.addAndGet(nanos);
+        long m;
+        while (nanos > (m = max.get()) && !max.compareAndSet(m, nanos)) { }
+    }
+
+    // Records nanos for a request that should have been sent every expectedInterval ns
+    // (0: no schedule). A longer latency held back the requests due in the meantime, so
+    // those are recorded too, with the latencies they would have had (HdrHistogram's
+    // correction for coordinated omission).
+    void record(long nanos, long expectedInterval) {
+        record(nanos);
+        if (expectedInterval <= 0) return;
+        for (long missed = nanos - expectedInterval; missed >= expectedInterval; missed -= expectedInterval) {
+            record(missed);
+        }
+    }
+
+    long count() {
+        return total.get();
+    }
+
+    long max() {
+        return max.get();
+    }
+
+    double mean() {
+        long n = total.get();
+        return n == 0 ? 0 : sum.get() / (double) n;
+    }
+
+    // Upper bound of the bucket holding the given percentile (0..100), in nanoseconds
+    long percentile(double p) {
+        long n = total.get();
+        if (n == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(n * p / 100.0));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            // the last bucket also holds everything too long for the table
+            if (seen >= rank) return i == BUCKETS - 1 ? max.get() : Math.min(upperBound(i), max.get());
+        }
+        return max.get();
+    }
+
+    // Adds this histogram's counts to another one
+    void addTo(LogHistogram target) {
+        for (int i = 0; i < counts.length(); i++) {
+            long c = counts.get(i);
+            if (c != 0) target.counts.addAndGet(i, c);
+        }
+        target.total.addAndGet(total.get());
+        target.sum.addAndGet(sum.get());
+        long mine = max.get(), m;
+        while (mine > (m = target.max.get()) && !target.max.compareAndSet(m, mine)) { }
+    }
+
+    // e.g. "n=1000 mean=0.041ms p50=0.038ms p99=0.090ms p99.9=0.210ms max=1.204ms"
+    String summary() {
+        return String.format(Locale.ROOT, "n=%d mean=%s p50=%s p99=%s p99.9=%s max=%s", count(),
+                millis((long) mean()), millis(percentile(50)), millis(percentile(99)), millis(percentile(99.9)),
+                millis(max()));
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3fms", nanos / 1e6);
+    }
+
+    // values below SUB_BUCKETS get a bucket each; above that, 16 steps per power of two
+    private static int bucket(long v) {
+        if (v < SUB_BUCKETS) return (int) v;
+        int exp = 63 - Long.numberOfLeadingZeros(v);
+        if (exp > MAX_EXPONENT) return BUCKETS - 1;
+        int sub = (int) ((v >>> (exp - SUB_BITS)) & (SUB_BUCKETS - 1));
+        return (exp - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    private static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        int exp = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        int sub = bucket % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + sub + 1) << (exp - SUB_BITS)) - 1;
+    }
+}
@@ -0,0 +1,284 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+
+/**
+ * The echo server on a single thread: one Selector over non-blocking channels, so the
+ * number of clients is bounded by file descriptors rather than threads. Each connection
+ * has its own read buffer, where a message can arrive in pieces and is answered once it
+ * is complete, and write buffer, which holds whatever the socket did not take yet.
+ * Everything answered from one read goes out in one write.
+ *
+ * Two protocols, chosen by the first bytes the client sends:
+ *   text    lines, answered "Server received: " + line, like the blocking server
+ *   binary  the client opens with HELLO and the server answers with HELLO. Then both
+ *           sides send frames: int length, int request id, length bytes of message
+ *           (big-endian). A reply frame has the request's id and "Server received: " +
+ *           message. Clients may send any number of requests without waiting.
+ *
+ * With a file root, text clients can also fetch files (see FileServer). The file goes out
+ * after the replies before it; the lines after it wait until it has been sent.
+ *
+ * STATS, as a line or as a frame's message, is answered with ServerMetrics.stats().
+ */
+class NioEchoServer {
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+    // a client sending a longer line or frame is disconnected
+    private static final int MAX_MESSAGE = 64 * 1024;
+    // stop reading from a client that does not read its replies
+    private static final int MAX_PENDING_OUTPUT = 1 << 20;
+    private static final byte[] PREFIX = "Server received: ".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] GET = "GET ".getBytes(StandardCharsets.UTF_8);
+    private static final ByteBuffer STATS = ByteBuffer.wrap("STATS".getBytes(StandardCharsets.UTF_8));
+
+    static final byte[] HELLO = {0, 'E', 'B', 1}; // a text line cannot start with 0
+    static final int FRAME_HEADER = 8;
+    private static final int UNKNOWN = 0, TEXT = 1, BINARY = 2;
+
+    private final ServerMetrics metrics;
+    private final FileServer files; // null: GET is echoed like any other line
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+
+    NioEchoServer(int port, ServerMetrics metrics, FileServer files) throws IOException {
+        this.metrics = metrics;
+        this.files = files;
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port), 1024);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    int port() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    // Serves until the thread is interrupted or the selector is closed
+    void serve() throws IOException {
+        while (!Thread.currentThread().isInterrupted() && selector.isOpen()) {
+            selector.select();
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                if (!key.isValid()) continue;
+                if (key.isAcceptable()) {
+                    accept();
+                    continue;
+                }
+                Connection c = (Connection) key.attachment();
+                try {
+                    if (key.isReadable()) c.read();
+                    if (key.isValid() && key.isWritable()) c.flush();
+                } catch (IOException e) {
+                    c.close(); // reset by the client, or a line too long
+                }
+            }
+        }
+        close();
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            if (metrics.logging()) System.out.println("Client connected: " + channel.socket());
+            metrics.connected();
+            Connection c = new Connection(channel);
+            c.key = channel.register(selector, SelectionKey.OP_READ, c);
+        }
+    }
+
+    void close() throws IOException {
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof Connection) ((Connection) key.attachment()).close();
+        }
+        serverChannel.close();
+        selector.close();
+    }
+
+    private final class Connection {
+        final SocketChannel channel;
+        SelectionKey key;
+        // both in "filling" mode: in holds the unanswered part of the input, out the
+        // replies not written yet
+        ByteBuffer in = ByteBuffer.allocate(BUFFER_SIZE);
+        ByteBuffer out = ByteBuffer.allocate(BUFFER_SIZE);
+        int scanned; // bytes at the start of in already searched for '\n'
+        int protocol = UNKNOWN;
+        FileServer.Transfer transfer; // a file being sent, after out and before the next reply
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        void read() throws IOException {
+            int n = channel.read(in);
+            if (n < 0) {
+                close();
+                return;
+            }
+            metrics.received(n);
+            process();
+            flush();
+        }
+
+        // Answers what is complete in in
+        private void process() throws IOException {
+            in.flip();
+            if (protocol == UNKNOWN && !negotiate()) {
+                in.compact(); // the rest of HELLO is still on its way
+                return;
+            }
+            in.position(protocol == TEXT ? lines() : frames());
+            in.compact();
+            if (!in.hasRemaining() && transfer == null) {
+                int max = MAX_MESSAGE + FRAME_HEADER;
+                if (in.capacity() >= max) throw new IOException("Message longer than " + MAX_MESSAGE + " bytes");
+                in = grow(in, Math.min(in.capacity() * 2, max));
+            }
+        }
+
+        // HELLO switches to frames, any other first byte means text
+        private boolean negotiate() {
+            int n = Math.min(in.remaining(), HELLO.length);
+            for (int i = 0; i < n; i++) {
+                if (in.get(i) != HELLO[i]) {
+                    protocol = TEXT;
+                    return true;
+                }
+            }
+            if (n < HELLO.length) return false;
+            in.position(HELLO.length);
+            out.put(HELLO);
+            protocol = BINARY;
+            return true;
+        }
+
+        // Answers the complete lines in in, up to a GET; returns where the rest starts
+        private int lines() {
+            int lineStart = in.position();
+            int i = Math.max(scanned, lineStart);
+            for (; i < in.limit() && transfer == null; i++) {
+                if (in.get(i) != '\n') continue;
+                int end = i > lineStart && in.get(i - 1) == '\r' ? i - 1 : i;
+                ByteBuffer line = in.slice(lineStart, end - lineStart);
+                if (files != null && startsWith(line, GET)) answerGet(line);
+                else if (line.equals(STATS)) answerStats(false, 0);
+                else answerLine(line);
+                lineStart = i + 1;
+            }
+            scanned = i - lineStart;
+            return lineStart;
+        }
+
+        // Answers the complete frames in in; returns where the incomplete one starts
+        private int frames() throws IOException {
+            int pos = in.position();
+            while (in.limit() - pos >= FRAME_HEADER) {
+                int length = in.getInt(pos);
+                if (length < 0 || length > MAX_MESSAGE) throw new IOException("Bad frame length " + length);
+                if (in.limit() - pos - FRAME_HEADER < length) break;
+                ByteBuffer message = in.slice(pos + FRAME_HEADER, length);
+                if (message.equals(STATS)) answerStats(true, in.getInt(pos + 4));
+                else answerFrame(in.getInt(pos + 4), message);
+                pos += FRAME_HEADER + length;
+            }
+            return pos;
+        }
+
+        private void answerLine(ByteBuffer line) {
+            long started = System.nanoTime();
+            if (metrics.sample()) System.out.println("Client: " + StandardCharsets.UTF_8.decode(line.duplicate()));
+            reserve(PREFIX.length + line.remaining() + 1);
+            out.put(PREFIX).put(line).put((byte) '\n');
+            metrics.message(System.nanoTime() - started);
+        }
+
+        private void answerGet(ByteBuffer line) {
+            long started = System.nanoTime();
+            String request = StandardCharsets.UTF_8.decode(line).toString();
+            if (metrics.sample()) System.out.println("Client: " + request);
+            FileServer.Transfer t = files.open(request);
+            byte[] header = t.header.getBytes(StandardCharsets.UTF_8);
+            reserve(header.length);
+            out.put(header);
+            if (!t.isDone()) transfer = t;
+            metrics.message(System.nanoTime() - started);
+        }
+
+        private void answerFrame(int id, ByteBuffer message) {
+            long started = System.nanoTime();
+            if (metrics.sample()) System.out.println("Client: " + StandardCharsets.UTF_8.decode(message.duplicate()));
+            reserve(FRAME_HEADER + PREFIX.length + message.remaining());
+            out.putInt(PREFIX.length + message.remaining()).putInt(id).put(PREFIX).put(message);
+            metrics.message(System.nanoTime() - started);
+        }
+
+        private void answerStats(boolean frame, int id) {
+            byte[] stats = metrics.stats().getBytes(StandardCharsets.UTF_8);
+            if (frame) {
+                reserve(FRAME_HEADER + stats.length);
+                out.putInt(stats.length).putInt(id).put(stats);
+            } else {
+                reserve(stats.length + 1);
+                out.put(stats).put((byte) '\n');
+            }
+        }
+
+        private void reserve(int bytes) {
+            if (out.remaining() < bytes) out = grow(out, Math.max(out.capacity() * 2, out.position() + bytes));
+        }
+
+        // Writes what the socket takes now and waits for OP_WRITE for the rest. No reading
+        // while a file is on its way: the lines after its GET are answered once it is sent.
+        void flush() throws IOException {
+            if (!key.isValid()) return;
+            while (true) {
+                out.flip();
+                metrics.sent(channel.write(out));
+                out.compact();
+                if (out.position() > 0 || transfer == null) break;
+                metrics.sent(transfer.sendTo(channel));
+                if (!transfer.isDone()) break;
+                transfer = null;
+                if (in.position() == 0) break;
+                process(); // the lines that waited for the file
+            }
+            int pending = out.position();
+            int ops = pending > MAX_PENDING_OUTPUT || transfer != null ? 0 : SelectionKey.OP_READ;
+            if (pending > 0 || transfer != null) ops |= SelectionKey.OP_WRITE;
+            key.interestOps(ops);
+        }
+
+        void close() {
+            if (!channel.isOpen()) return;
+            if (transfer != null) transfer.close();
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+            metrics.disconnected();
+        }
+    }
+
+    private static boolean startsWith(ByteBuffer buffer, byte[] prefix) {
+        return buffer.remaining() >= prefix.length && buffer.slice(0, prefix.length).equals(ByteBuffer.wrap(prefix));
+    }
+
+    private static ByteBuffer grow(ByteBuffer buffer, int capacity) {
+        ByteBuffer bigger = ByteBuffer.allocate(capacity);
+        buffer.flip();
+        return bigger.put(buffer);
+    }
+}
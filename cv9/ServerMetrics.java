@@ -0,0 +1,216 @@
+import javax.management.*;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Request counters and a per-message latency histogram for one SimpleServer, published
+ * as the MBean "cv9:type=SimpleServer,port=N" (jconsole: MBeans tab), answered to the
+ * STATS command and, while reporting, printed every few seconds. Recording is
+ * lock-free: counters are LongAdders and each thread records into one of a few
+ * histogram stripes, which are merged only when someone reads them.
+ *
+ * Also decides what the debug log prints: nothing by default, since every println takes
+ * the console lock and would serialize all requests on it.
+ */
+class ServerMetrics {
+
+    // a power of two, roughly one stripe per core
+    private static final int STRIPES = Math.min(8, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1));
+
+    private final LongAdder connections = new LongAdder();
+    private final LongAdder active = new LongAdder();
+    private final LongAdder messages = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final LogHistogram[] latency = new LogHistogram[STRIPES];
+
+    private final int logEvery; // debug log: connections and 1 in logEvery messages; 0: off
+    private final AtomicLong logged = new AtomicLong();
+
+    // messages per second over the last second, updated while reporting
+    private volatile double messageRate;
+    private ScheduledExecutorService reporter;
+
+    ServerMetrics(int logEvery) {
+        this.logEvery = logEvery;
+        for (int i = 0; i < latency.length; i++) latency[i] = new LogHistogram();
+    }
+
+    void connected() {
+        connections.increment();
+        active.increment();
+    }
+
+    void disconnected() {
+        active.decrement();
+    }
+
+    // nanos: time from reading the message to the reply being written
+    void message(long nanos) {
+        messages.increment();
+        latency[(int) Thread.currentThread().getId() & (STRIPES - 1)].record(nanos);
+    }
+
+    void received(long bytes) {
+        bytesIn.add(bytes);
+    }
+
+    void sent(long bytes) {
+        bytesOut.add(bytes);
+    }
+
+    // Streams that count what goes through them as received / sent
+    InputStream counting(InputStream in) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) received(1);
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                if (n > 0) received(n);
+                return n;
+            }
+        };
+    }
+
+    OutputStream counting(OutputStream out) {
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                sent(1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len); // FilterOutputStream's own would go byte by byte
+                sent(len);
+            }
+        };
+    }
+
+    // Whether the debug log shows connections
+    boolean logging() {
+        return logEvery > 0;
+    }
+
+    // Whether the debug log shows the message being handled
+    boolean sample() {
+        return logEvery > 0 && logged.getAndIncrement() % logEvery == 0;
+    }
+
+    LogHistogram latency() {
+        LogHistogram merged = new LogHistogram();
+        for (LogHistogram h : latency) h.addTo(merged);
+        return merged;
+    }
+
+    // e.g. "active=3 total=10 messages=52000 rate=9985/s in=260000B out=1144000B latency n=52000 mean=..."
+    String stats() {
+        return String.format(Locale.ROOT, "active=%d total=%d messages=%d rate=%.0f/s in=%dB out=%dB latency %s",
+                active.sum(), connections.sum(), messages.sum(), messageRate, bytesIn.sum(), bytesOut.sum(),
+                latency().summary());
+    }
+
+    // Updates the message rate every second and prints stats() every dumpSeconds (0: never)
+    synchronized void startReporting(int dumpSeconds) {
+        if (reporter != null) return;
+        reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "server-stats");
+            t.setDaemon(true);
+            return t;
+        });
+        long[] last = {messages.sum(), System.nanoTime(), 0};
+        reporter.scheduleAtFixedRate(() -> {
+            long m = messages.sum(), now = System.nanoTime();
+            messageRate = (m - last[0]) / ((now - last[1]) / 1e9);
+            last[0] = m;
+            last[1] = now;
+            if (dumpSeconds > 0 && ++last[2] % dumpSeconds == 0) {
+                System.out.println("[" + LocalTime.now().truncatedTo(ChronoUnit.SECONDS) + "] " + stats());
+            }
+        }, 1, 1, TimeUnit.SECONDS);
+    }
+
+    synchronized void stopReporting() {
+        if (reporter != null) reporter.shutdownNow();
+        reporter = null;
+    }
+
+    // Metrics still work if JMX is not available, they just are not published
+    void publish(int port) {
+        try {
+            ObjectName name = new ObjectName("cv9:type=SimpleServer,port=" + port);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name)) server.unregisterMBean(name);
+            server.registerMBean(new StandardMBean(new View(), ServerMetricsMXBean.class, true), name);
+        } catch (JMException e) {
+            System.err.println("Cannot publish server metrics: " + e);
+        }
+    }
+
+    public interface ServerMetricsMXBean {
+        long getTotalConnections();
+
+        long getActiveConnections();
+
+        long getMessages();
+
+        double getMessagesPerSecond();
+
+        long getBytesIn();
+
+        long getBytesOut();
+
+        double getMeanMs();
+
+        double getP50Ms();
+
+        double getP99Ms();
+
+        double getP999Ms();
+
+        double getMaxMs();
+    }
+
+    private class View implements ServerMetricsMXBean {
+        public long getTotalConnections() { return connections.sum(); }
+
+        public long getActiveConnections() { return active.sum(); }
+
+        public long getMessages() { return messages.sum(); }
+
+        public double getMessagesPerSecond() { return messageRate; }
+
+        public long getBytesIn() { return bytesIn.sum(); }
+
+        public long getBytesOut() { return bytesOut.sum(); }
+
+        public double getMeanMs() { return latency().mean() / 1e6; }
+
+        public double getP50Ms() { return latency().percentile(50) / 1e6; }
+
+        public double getP99Ms() { return latency().percentile(99) / 1e6; }
+
+        public double getP999Ms() { return latency().percentile(99.9) / 1e6; }
+
+        public double getMaxMs() { return latency().max() / 1e6; }
+    }
+}
@@ -2,43 +2,144 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.file.Paths;
 
+// java SimpleServer [-mode blocking|nio|threads|virtual] [-port 12345] [-maxConnections 10000]
+//                   [-root directory] [-stats 10] [-debug 0]
+//   blocking  one client, served with blocking reads on the main thread, then exit (default)
+//   nio       any number of clients on one thread with a Selector (NioEchoServer); also
+//             speaks a binary protocol with request ids for pipelining clients
+//   threads   a platform thread per client (ThreadedEchoServer)
+//   virtual   a virtual thread per client; needs Java 21, falls back to platform threads
+// -maxConnections caps the clients served at once by threads and virtual; more wait to be
+// accepted. -root turns on the GET command for the files under that directory (FileServer).
+// The STATS command answers with the server's counters (ServerMetrics), which are also
+// printed every -stats seconds (0: never). -debug N prints the connections and 1 in N
+// messages (0: none, 1: all).
 public class SimpleServer {
     public static void main(String[] args) {
-        final int PORT_NUMBER = 12345;
-
+        String mode = "blocking";
+        int port = 12345;
+        int maxConnections = 10_000;
+        String root = null;
+        int statsSeconds = 10;
+        int debugEvery = 0;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-mode": mode = args[++i]; break;
+                case "-port": port = Integer.parseInt(args[++i]); break;
+                case "-maxConnections": maxConnections = Integer.parseInt(args[++i]); break;
+                case "-root": root = args[++i]; break;
+                case "-stats": statsSeconds = Integer.parseInt(args[++i]); break;
+                case "-debug": debugEvery = Integer.parseInt(args[++i]); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        final int PORT_NUMBER = port;
+        FileServer files;
         try {
-            // Create a server socket
-            ServerSocket serverSocket = new ServerSocket(PORT_NUMBER);
-            System.out.println("Server is listening on port " + PORT_NUMBER);
+            files = root == null ? null : new FileServer(Paths.get(root));
+        } catch (IOException e) {
+            System.err.println("Cannot serve files from " + root + ": " + e);
+            return;
+        }
+        ServerMetrics metrics = new ServerMetrics(debugEvery);
+        metrics.publish(PORT_NUMBER);
+        metrics.startReporting(statsSeconds);
+        try {
+            serve(mode, PORT_NUMBER, maxConnections, metrics, files);
+        } finally {
+            metrics.stopReporting();
+        }
+    }
+
+    private static void serve(String mode, int port, int maxConnections, ServerMetrics metrics, FileServer files) {
+        if (mode.equals("nio")) {
+            try {
+                NioEchoServer server = new NioEchoServer(port, metrics, files);
+                System.out.println("Server is listening on port " + port + " (nio)");
+                server.serve();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            return;
+        }
+        if (mode.equals("threads") || mode.equals("virtual")) {
+            try {
+                ThreadedEchoServer server = new ThreadedEchoServer(port, mode.equals("virtual"), maxConnections, metrics, files);
+                System.out.println("Server is listening on port " + port + " (" + server.describe() + ")");
+                server.serve();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            return;
+        }
+        if (!mode.equals("blocking")) throw new IllegalArgumentException("Unknown mode " + mode);
+
+        // Create a server socket (from a channel, so GET can send files with transferTo)
+        try (ServerSocket serverSocket = ServerSocketChannel.open().bind(new InetSocketAddress(port)).socket()) {
+            System.out.println("Server is listening on port " + port);
 
             // Wait for a client to connect
             Socket clientSocket = serverSocket.accept();
-            System.out.println("Client connected: " + clientSocket);
+            if (metrics.logging()) System.out.println("Client connected: " + clientSocket);
+            serveClient(clientSocket, metrics, files);
+
+        } catch (ClosedByInterruptException e) {
+            // interrupted while waiting for or serving the client: shut down quietly
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
 
+    // Echoes lines until the client disconnects, then closes the socket. The socket must
+    // come from a ServerSocketChannel if files is given.
+    static void serveClient(Socket clientSocket, ServerMetrics metrics, FileServer files) throws IOException {
+        metrics.connected();
+        try {
             // Setup input and output streams for communication
-            BufferedReader in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-            PrintWriter out = new PrintWriter(clientSocket.getOutputStream(), true);
+            BufferedReader in = new BufferedReader(new InputStreamReader(metrics.counting(clientSocket.getInputStream())));
+            // no autoflush: replies to requests that arrived together go out in one write
+            PrintWriter out = new PrintWriter(metrics.counting(clientSocket.getOutputStream()), false);
 
-            // Read and print messages from the client
+            // Read messages from the client (printed only with -debug)
             String clientMessage;
             while ((clientMessage = in.readLine()) != null) {
-                System.out.println("Client: " + clientMessage);
+                long start = System.nanoTime();
+                if (metrics.sample()) System.out.println("Client: " + clientMessage);
+
+                if (clientMessage.equals("STATS")) {
+                    out.println(metrics.stats());
+                    if (!in.ready()) out.flush();
+                    continue;
+                }
+
+                if (files != null && FileServer.isGet(clientMessage)) {
+                    FileServer.Transfer transfer = files.open(clientMessage);
+                    out.print(transfer.header);
+                    out.flush();
+                    metrics.message(System.nanoTime() - start);
+                    metrics.sent(transfer.sendTo(clientSocket.getChannel())); // blocking, so all of it
+                    continue;
+                }
 
                 // Send a response back to the client
                 out.println("Server received: " + clientMessage);
+                if (!in.ready()) out.flush();
+                metrics.message(System.nanoTime() - start);
             }
 
             // Close the resources
             in.close();
             out.close();
+        } finally {
             clientSocket.close();
-            serverSocket.close();
-
-        } catch (IOException e) {
-            e.printStackTrace();
+            metrics.disconnected();
         }
     }
 }
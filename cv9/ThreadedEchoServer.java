@@ -0,0 +1,106 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ServerSocketChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * The echo server with one thread per client, each running the plain blocking
+ * readLine / println loop of SimpleServer.serveClient. The threads are either platform
+ * threads or, on Java 21 and later, virtual threads, so the two can be compared with the
+ * same code and the same load. At most maxConnections clients are served at once; the
+ * rest wait in the listen backlog until one leaves.
+ */
+class ThreadedEchoServer {
+
+    private final ServerSocket serverSocket;
+    private final ServerMetrics metrics;
+    private final FileServer files;
+    private final int maxConnections;
+    private final Semaphore slots;
+    private final boolean virtual;
+    private final ExecutorService clients;
+
+    ThreadedEchoServer(int port, boolean virtualThreads, int maxConnections, ServerMetrics metrics, FileServer files)
+            throws IOException {
+        this.metrics = metrics;
+        this.files = files;
+        this.maxConnections = maxConnections;
+        this.slots = new Semaphore(maxConnections);
+        ExecutorService executor = virtualThreads ? virtualThreadExecutor() : null;
+        this.virtual = executor != null;
+        if (executor == null) {
+            if (virtualThreads) System.err.println("Virtual threads need Java 21, using platform threads");
+            executor = Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "echo-client");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        this.clients = executor;
+        // from a channel, so the client sockets have one for GET's transferTo (and an
+        // interrupt ends a waiting accept)
+        this.serverSocket = ServerSocketChannel.open().bind(new InetSocketAddress(port), 1024).socket();
+    }
+
+    int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    String describe() {
+        return (virtual ? "virtual" : "platform") + " thread per client, at most " + maxConnections;
+    }
+
+    // Serves until the thread is interrupted or the server socket is closed
+    void serve() throws IOException {
+        try {
+            while (!Thread.currentThread().isInterrupted() && !serverSocket.isClosed()) {
+                slots.acquire();
+                Socket clientSocket = serverSocket.accept();
+                if (metrics.logging()) System.out.println("Client connected: " + clientSocket);
+                clients.execute(() -> {
+                    try {
+                        SimpleServer.serveClient(clientSocket, metrics, files);
+                    } catch (IOException e) {
+                        // reset by the client
+                    } finally {
+                        slots.release();
+                    }
+                });
+            }
+        } catch (InterruptedException | ClosedByInterruptException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            close();
+        }
+    }
+
+    void close() throws IOException {
+        serverSocket.close();
+        clients.shutdownNow();
+    }
+
+    // False before Java 21, where "virtual" runs on platform threads
+    static boolean virtualThreadsAvailable() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor() through reflection, so this still builds
+    // and runs on Java 17; null there
+    private static ExecutorService virtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}